@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Construction of events, whose gravatar url is computed from the mail of their author.
+ */
+@State(Scope.Thread)
+public class EventBenchmark {
+
+    /*
+     * a few dozen authors, as in a real timeline
+     */
+    String[] emails = new String[30];
+
+    int next;
+
+    @Setup
+    public void buildEmails() {
+        for (int i = 0; i < emails.length; i++) {
+            emails[i] = "user" + i + "@xebia.fr";
+        }
+    }
+
+    @Benchmark
+    public Event construct() {
+        next = (next + 1) % emails.length;
+        return new Event("benchmark:" + next, 1295779740000L, "user", "Build SUCCESS", emails[next], EventLevel.INFO);
+    }
+
+    @Benchmark
+    public Event construct_without_email() {
+        return new Event("benchmark", 1295779740000L, "anonymous", "Build SUCCESS", null, EventLevel.UNDIFINED);
+    }
+}
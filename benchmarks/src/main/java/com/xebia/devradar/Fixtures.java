@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
+import com.sun.jersey.api.json.JSONConfiguration;
+import com.sun.jersey.client.urlconnection.HttpURLConnectionFactory;
+import com.sun.jersey.client.urlconnection.URLConnectionClientHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The json fixtures of the tests, scaled up, and a client answering them from memory.
+ */
+final class Fixtures {
+
+    static final String HUDSON_URL = "http://hudson";
+
+    static final String GITHUB_URL = "http://github/api/v2/json/commits/list/xebia-france/dev-radar/master";
+
+    private static final Pattern HUDSON_BUILD = Pattern.compile("\\{\"actions\":");
+
+    private static final Pattern GITHUB_ID = Pattern.compile("\"id\":\"");
+
+    private Fixtures() {
+    }
+
+    static String read(String path) {
+        try {
+            Reader reader = new InputStreamReader(Fixtures.class.getResourceAsStream(path), "UTF-8");
+            try {
+                StringBuilder json = new StringBuilder();
+                char[] buffer = new char[4096];
+                for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                    json.append(buffer, 0, read);
+                }
+                return json.toString();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read " + path, e);
+        }
+    }
+
+    /**
+     * @return the builds of the n-builds fixture repeated <code>times</code> times, numbered from the newest
+     */
+    static byte[] hudsonBuilds(int times) {
+        String json = read("/hudson/json/hudson-rest-stream-n-builds.json");
+        String builds = json.substring(json.indexOf('[') + 1, json.lastIndexOf(']'));
+        StringBuilder scaled = new StringBuilder("{\"builds\":[");
+        for (int i = 0; i < times; i++) {
+            if (i > 0) {
+                scaled.append(',');
+            }
+            scaled.append(builds);
+        }
+        scaled.append("]}");
+
+        Matcher build = HUDSON_BUILD.matcher(scaled);
+        StringBuffer numbered = new StringBuffer();
+        int number = times * 20;
+        while (build.find()) {
+            build.appendReplacement(numbered, "{\"number\":" + number-- + ",\"actions\":");
+        }
+        build.appendTail(numbered);
+        return bytes(numbered.toString());
+    }
+
+    /**
+     * @return the commits of the 35-commits fixture repeated <code>times</code> times, with distinct ids
+     */
+    static byte[] gitHubCommits(int times) {
+        String json = read("/github/json/github-rest-stream-35-commits.json");
+        String commits = json.substring(json.indexOf('[') + 1, json.lastIndexOf(']'));
+        StringBuilder scaled = new StringBuilder("{\"commits\":[");
+        for (int i = 0; i < times; i++) {
+            if (i > 0) {
+                scaled.append(',');
+            }
+            scaled.append(GITHUB_ID.matcher(commits).replaceAll("\"id\":\"" + i + "-"));
+        }
+        return bytes(scaled.append("]}").toString());
+    }
+
+    static byte[] bytes(String json) {
+        try {
+            return json.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException("utf-8 is not supported", e);
+        }
+    }
+
+    /**
+     * @param responses the body of each url, without its query
+     */
+    static Client client(final Map<String, byte[]> responses) {
+        ClientConfig clientConfig = new DefaultClientConfig();
+        clientConfig.getFeatures().put(JSONConfiguration.FEATURE_POJO_MAPPING, true);
+        return new Client(new URLConnectionClientHandler(new HttpURLConnectionFactory() {
+            @Override
+            public HttpURLConnection getHttpURLConnection(URL url) throws IOException {
+                String path = url.toString().split("\\?")[0];
+                return new InMemoryHttpURLConnection(url, responses.get(path));
+            }
+        }), clientConfig);
+    }
+
+    static Map<String, byte[]> hudsonResponses(byte[] builds) {
+        Map<String, byte[]> responses = new HashMap<String, byte[]>();
+        responses.put(HUDSON_URL + "/job/dev-radar/api/json", builds);
+        responses.put(HUDSON_URL + "/user/mrenou/api/json", bytes(read("/hudson/json/hudson-rest-stream-user-mrenou.json")));
+        responses.put(HUDSON_URL + "/user/Nicolas%20Griso/api/json", bytes(read("/hudson/json/hudson-rest-stream-user-ngriso.json")));
+        return responses;
+    }
+
+    /*
+     * 200 with the body, or 404 without body
+     */
+    private static class InMemoryHttpURLConnection extends HttpURLConnection {
+
+        private final byte[] body;
+
+        InMemoryHttpURLConnection(URL url, byte[] body) {
+            super(url);
+            this.body = body;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return body == null ? HTTP_NOT_FOUND : HTTP_OK;
+        }
+
+        @Override
+        public String getResponseMessage() {
+            return body == null ? "Not Found" : "OK";
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (body == null) {
+                throw new IOException(url + " not found");
+            }
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return body == null ? new ByteArrayInputStream(new byte[0]) : null;
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/json;charset=UTF-8";
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            Map<String, List<String>> headers = new HashMap<String, List<String>>();
+            headers.put("Content-Type", Collections.singletonList(getContentType()));
+            return headers;
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+}
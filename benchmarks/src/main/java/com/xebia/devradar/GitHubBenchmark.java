@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import com.sun.jersey.api.client.Client;
+import org.joda.time.format.ISODateTimeFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Reading and transformation of GitHub commits, from memory.
+ */
+@State(Scope.Benchmark)
+public class GitHubBenchmark {
+
+    /**
+     * number of copies of the 35 commits of the fixture
+     */
+    @Param({"30", "300"})
+    int copies;
+
+    Client client;
+
+    @Setup
+    public void scaleFixture() {
+        client = Fixtures.client(Collections.singletonMap(Fixtures.GITHUB_URL, Fixtures.gitHubCommits(copies)));
+    }
+
+    /**
+     * First fetch of a branch: all the commits of the page are new.
+     */
+    @Benchmark
+    public Set<Event> fetch() {
+        GitHubFetcher fetcher = new GitHubFetcher(Fixtures.GITHUB_URL) {
+            @Override
+            Client buildJerseyClient() {
+                return client;
+            }
+        };
+        return fetcher.fetch();
+    }
+
+    /**
+     * Parsing of a commit date, as done for each commit.
+     */
+    @Benchmark
+    public long parse_date() {
+        return ISODateTimeFormat.dateTimeNoMillis().parseDateTime("2011-01-10T09:15:40-08:00").getMillis();
+    }
+}
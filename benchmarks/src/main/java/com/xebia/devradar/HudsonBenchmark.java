@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import com.sun.jersey.api.client.Client;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.Set;
+
+/**
+ * Reading and transformation of the builds of a long Hudson job history, from memory.
+ */
+@State(Scope.Benchmark)
+public class HudsonBenchmark {
+
+    /**
+     * number of copies of the 20 builds of the n-builds fixture
+     */
+    @Param({"50", "500"})
+    int copies;
+
+    byte[] builds;
+
+    Client client;
+
+    @Setup
+    public void scaleFixture() {
+        builds = Fixtures.hudsonBuilds(copies);
+        client = Fixtures.client(Fixtures.hudsonResponses(builds));
+    }
+
+    /**
+     * Stream the builds without transforming them.
+     */
+    @Benchmark
+    public int read_builds() {
+        HudsonBuildReader reader = HudsonBuildReader.readBuilds(new ByteArrayInputStream(builds));
+        int count = 0;
+        try {
+            for (HudsonBuildReader.Build build = reader.next(); build != null; build = reader.next()) {
+                count += build.userNames.size();
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    /**
+     * First fetch of a job: all the builds are read and transformed into events, user mails are cached.
+     */
+    @Benchmark
+    public Set<Event> fetch() {
+        HudsonFetcher fetcher = new HudsonFetcher(Fixtures.HUDSON_URL, "dev-radar") {
+            @Override
+            Client buildJerseyClient() {
+                return client;
+            }
+        };
+        return fetcher.fetch();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Publication of a timeline from the events of a workspace.
+ */
+@State(Scope.Benchmark)
+public class TimelineBenchmark {
+
+    @Param({"1000", "10000"})
+    int eventCount;
+
+    List<Event> events;
+
+    Timeline publishedTimeline;
+
+    @Setup
+    public void buildEvents() {
+        events = new ArrayList<Event>(eventCount);
+        for (int i = 0; i < eventCount; i++) {
+            events.add(new Event("benchmark:" + i, 1295779740000L + i * 1000L, "user" + (i % 30), "Build SUCCESS", "user" + (i % 30) + "@xebia.fr", EventLevel.INFO));
+        }
+        publishedTimeline = new Timeline();
+        publishedTimeline.update(events);
+    }
+
+    /**
+     * Rebuild a timeline from all the events.
+     */
+    @Benchmark
+    public Timeline update() {
+        Timeline timeline = new Timeline();
+        timeline.update(events);
+        return timeline;
+    }
+
+    /**
+     * Add all the events to an empty timeline, as on the first poll.
+     */
+    @Benchmark
+    public Timeline add_to_empty_timeline() {
+        Timeline timeline = new Timeline();
+        timeline.add(events);
+        return timeline;
+    }
+
+    /**
+     * Add events already published, as on a poll without news: nothing is published.
+     */
+    @Benchmark
+    public Timeline add_published_events() {
+        publishedTimeline.add(events);
+        return publishedTimeline;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Request the workspaces in turn until the deadline, like a browser refreshing its radar.
+ */
+class LoadClient implements Runnable {
+
+    private final String baseUrl;
+
+    private final int workspaces;
+
+    private final long deadline;
+
+    private final long thinkMillis;
+
+    private final boolean conditional;
+
+    private final boolean gzip;
+
+    private final Map<Integer, String> entityTags = new HashMap<Integer, String>();
+
+    private final LoadStatistics statistics = new LoadStatistics();
+
+    private final byte[] buffer = new byte[8192];
+
+    private int workspace;
+
+    LoadClient(String baseUrl, int workspaces, int index, long deadline, long thinkMillis, boolean conditional, boolean gzip) {
+        this.baseUrl = baseUrl;
+        this.workspaces = workspaces;
+        this.workspace = index % workspaces;
+        this.deadline = deadline;
+        this.thinkMillis = thinkMillis;
+        this.conditional = conditional;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public void run() {
+        while (System.currentTimeMillis() < deadline) {
+            long start = System.nanoTime();
+            try {
+                int status = request(workspace + 1);
+                statistics.record(status, System.nanoTime() - start);
+            } catch (IOException e) {
+                statistics.recordFailure();
+            }
+            workspace = (workspace + 1) % workspaces;
+            if (thinkMillis > 0) {
+                try {
+                    Thread.sleep(thinkMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private int request(int id) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + id).openConnection();
+        connection.setRequestProperty("Accept", "application/json");
+        if (gzip) {
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+        }
+        String entityTag = entityTags.get(id);
+        if (conditional && entityTag != null) {
+            connection.setRequestProperty("If-None-Match", entityTag);
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null) {
+            // read to the end, so that the connection is kept alive
+            try {
+                for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                    statistics.addBytes(read);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        if (status == HttpURLConnection.HTTP_OK && connection.getHeaderField("ETag") != null) {
+            entityTags.put(id, connection.getHeaderField("ETag"));
+        }
+        return status;
+    }
+
+    LoadStatistics getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar.loadtest;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latencies and statuses of the requests of a client, merged into those of all the clients at the end of the run.
+ * Not thread safe.
+ */
+class LoadStatistics {
+
+    private long[] latencies = new long[1024];
+
+    private int count;
+
+    private int failures;
+
+    private long bytes;
+
+    private final Map<Integer, Integer> statuses = new TreeMap<Integer, Integer>();
+
+    void record(int status, long latencyNanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+        Integer statusCount = statuses.get(status);
+        statuses.put(status, statusCount == null ? 1 : statusCount + 1);
+    }
+
+    void recordFailure() {
+        failures++;
+    }
+
+    void addBytes(int read) {
+        bytes += read;
+    }
+
+    void add(LoadStatistics other) {
+        for (int i = 0; i < other.count; i++) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = other.latencies[i];
+        }
+        for (Map.Entry<Integer, Integer> status : other.statuses.entrySet()) {
+            Integer statusCount = statuses.get(status.getKey());
+            statuses.put(status.getKey(), statusCount == null ? status.getValue() : statusCount + status.getValue());
+        }
+        failures += other.failures;
+        bytes += other.bytes;
+    }
+
+    void print(PrintStream out, long durationMillis) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        out.println(String.format("requests     %d (%.1f/s)", count, count * 1000.0 / durationMillis));
+        out.println(String.format("received     %.1f MB (%.1f MB/s)", bytes / 1e6, bytes / 1e3 / durationMillis));
+        out.println("statuses     " + statuses + ", " + failures + " failed connections");
+        if (count > 0) {
+            out.println(String.format("latency ms   p50 %.2f  p90 %.2f  p99 %.2f  max %.2f",
+                    percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), sorted[count - 1] / 1e6));
+        }
+    }
+
+    private double percentile(long[] sorted, double rank) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(rank * sorted.length))] / 1e6;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar.loadtest;
+
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.jetty.webapp.WebAppContext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Boot the Dev Radar war against a stub Hudson and a stub GitHub, then request workspaces from concurrent clients
+ * and report the throughput and the latencies, without any network access.
+ */
+public class LoadTest {
+
+    private static final String HUDSON_JOB = "dev-radar";
+
+    private final Map<String, String> options = new LinkedHashMap<String, String>();
+
+    private final Map<String, String> descriptions = new LinkedHashMap<String, String>();
+
+    LoadTest() {
+        option("war", "../target/dev-radar.war", "war of Dev Radar");
+        option("clients", "50", "number of concurrent clients");
+        option("workspaces", "10", "number of workspaces requested by the clients");
+        option("warmup", "10", "seconds of requests before measuring");
+        option("duration", "60", "seconds of measured requests");
+        option("think", "0", "milliseconds between two requests of a client");
+        option("conditional", "false", "send If-None-Match with the ETag of the previous response");
+        option("gzip", "false", "accept gzip responses");
+        option("poll", "5", "seconds between two polls of a workspace");
+        option("maxpoll", "60", "seconds between two fetches of an idle source");
+        option("latency", "50", "milliseconds before the stubs answer");
+        option("errors", "0", "rate of stub requests answered with a 500, between 0 and 1");
+        option("builds", "200", "builds of the stub Hudson job");
+        option("commits", "350", "commits of the stub GitHub branch");
+        option("message", "80", "size of the commit messages");
+        option("change", "30", "seconds between two new builds and commits, 0 for none");
+        option("data", "", "data directory of the event logs, none by default");
+    }
+
+    private void option(String name, String defaultValue, String description) {
+        options.put(name, defaultValue);
+        descriptions.put(name, description);
+    }
+
+    private boolean parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].startsWith("-") ? args[i].substring(1) : args[i];
+            if (!options.containsKey(name) || i + 1 == args.length) {
+                System.out.println("usage: java -jar load-test.jar [-option value]...");
+                for (Map.Entry<String, String> description : descriptions.entrySet()) {
+                    System.out.println(String.format("  -%-12s %s (%s)", description.getKey(), description.getValue(), options.get(description.getKey())));
+                }
+                return false;
+            }
+            options.put(name, args[++i]);
+        }
+        return true;
+    }
+
+    private String get(String name) {
+        return options.get(name);
+    }
+
+    private int getInt(String name) {
+        return Integer.parseInt(get(name));
+    }
+
+    private long getMillis(String name) {
+        return Math.round(Double.parseDouble(get(name)) * 1000);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTest loadTest = new LoadTest();
+        if (loadTest.parse(args)) {
+            loadTest.run();
+        }
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        long latency = Long.parseLong(get("latency"));
+        double errorRate = Double.parseDouble(get("errors"));
+        long changeInterval = getMillis("change");
+
+        Server stubs = new Server();
+        SelectChannelConnector hudsonConnector = connector(stubs);
+        SelectChannelConnector gitHubConnector = connector(stubs);
+        StubHudson hudson = new StubHudson(HUDSON_JOB, getInt("builds"), latency, errorRate, changeInterval);
+        StubGitHub gitHub = new StubGitHub(getInt("commits"), getInt("message"), latency, errorRate, changeInterval);
+        stubs.setHandler(new PortDispatcher(hudsonConnector, hudson, gitHub));
+        stubs.start();
+
+        Server app = new Server();
+        SelectChannelConnector appConnector = connector(app);
+        File overrideDescriptor = writeOverrideDescriptor(
+                "http://localhost:" + hudsonConnector.getLocalPort() + "/hudson",
+                "http://localhost:" + gitHubConnector.getLocalPort() + StubGitHub.COMMITS_PATH);
+        WebAppContext webApp = new WebAppContext(new File(get("war")).getAbsolutePath(), "/");
+        webApp.setOverrideDescriptor(overrideDescriptor.getAbsolutePath());
+        app.setHandler(webApp);
+        app.start();
+        if (webApp.getUnavailableException() != null) {
+            throw new IllegalStateException("Cannot start " + get("war"), webApp.getUnavailableException());
+        }
+
+        try {
+            String baseUrl = "http://localhost:" + appConnector.getLocalPort() + "/resources/workspaces/";
+            System.out.println("warming up " + get("clients") + " clients on " + get("workspaces") + " workspaces for " + get("warmup") + "s");
+            runClients(baseUrl, getMillis("warmup"));
+            System.out.println("measuring for " + get("duration") + "s");
+            LoadStatistics statistics = runClients(baseUrl, getMillis("duration"));
+            statistics.print(System.out, getMillis("duration"));
+        } finally {
+            app.stop();
+            stubs.stop();
+            overrideDescriptor.delete();
+        }
+    }
+
+    private SelectChannelConnector connector(Server server) {
+        SelectChannelConnector connector = new SelectChannelConnector();
+        connector.setHost("localhost");
+        connector.setPort(0);
+        server.addConnector(connector);
+        return connector;
+    }
+
+    private LoadStatistics runClients(String baseUrl, long durationMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + durationMillis;
+        List<LoadClient> clients = new ArrayList<LoadClient>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < getInt("clients"); i++) {
+            LoadClient client = new LoadClient(baseUrl, getInt("workspaces"), i, deadline, Long.parseLong(get("think")),
+                    Boolean.parseBoolean(get("conditional")), Boolean.parseBoolean(get("gzip")));
+            Thread thread = new Thread(client, "load-client-" + i);
+            thread.start();
+            clients.add(client);
+            threads.add(thread);
+        }
+        LoadStatistics statistics = new LoadStatistics();
+        for (int i = 0; i < threads.size(); i++) {
+            threads.get(i).join();
+            statistics.add(clients.get(i).getStatistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * the web.xml parameters of the war pointing at the stubs
+     */
+    private File writeOverrideDescriptor(String hudsonUrl, String gitHubUrl) throws IOException {
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+        parameters.put("devradar.hudson.url", hudsonUrl);
+        parameters.put("devradar.hudson.job", HUDSON_JOB);
+        parameters.put("devradar.github.url", gitHubUrl);
+        parameters.put("devradar.poll.interval.seconds", get("poll"));
+        parameters.put("devradar.poll.max.interval.seconds", get("maxpoll"));
+        parameters.put("devradar.workspace.max", get("workspaces"));
+        parameters.put("devradar.data.dir", get("data"));
+
+        File file = File.createTempFile("load-test-web", ".xml");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<web-app xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"2.5\">\n");
+            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                writer.write("    <context-param>\n");
+                writer.write("        <param-name>" + parameter.getKey() + "</param-name>\n");
+                writer.write("        <param-value>" + parameter.getValue() + "</param-value>\n");
+                writer.write("    </context-param>\n");
+            }
+            writer.write("</web-app>\n");
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar.loadtest;
+
+import org.mortbay.jetty.Connector;
+import org.mortbay.jetty.HttpConnection;
+import org.mortbay.jetty.handler.AbstractHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serve the stub Hudson on its connector and the stub GitHub on the other one, like two distinct hosts.
+ */
+class PortDispatcher extends AbstractHandler {
+
+    private final Connector hudsonConnector;
+
+    private final StubHudson hudson;
+
+    private final StubGitHub gitHub;
+
+    PortDispatcher(Connector hudsonConnector, StubHudson hudson, StubGitHub gitHub) {
+        this.hudsonConnector = hudsonConnector;
+        this.hudson = hudson;
+        this.gitHub = gitHub;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        hudson.setServer(getServer());
+        gitHub.setServer(getServer());
+        hudson.start();
+        gitHub.start();
+        super.doStart();
+    }
+
+    @Override
+    public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch) throws IOException, ServletException {
+        if (HttpConnection.getCurrentConnection().getConnector() == hudsonConnector) {
+            // Hudson is served under /hudson
+            hudson.handle(target.startsWith("/hudson") ? target.substring("/hudson".length()) : target, request, response, dispatch);
+        } else {
+            gitHub.handle(target, request, response, dispatch);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar.loadtest;
+
+import javax.servlet.http.HttpServletRequest;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A GitHub branch answering the commits list of the v2 api, newest first, 35 commits per page.
+ */
+class StubGitHub extends StubHandler {
+
+    static final String COMMITS_PATH = "/api/v2/json/commits/list/xebia-france/dev-radar/master";
+
+    private static final int PAGE_SIZE = 35;
+
+    private final int commits;
+
+    private final int messageSize;
+
+    StubGitHub(int commits, int messageSize, long latencyMillis, double errorRate, long changeIntervalMillis) {
+        super(latencyMillis, errorRate, changeIntervalMillis);
+        this.commits = commits;
+        this.messageSize = messageSize;
+    }
+
+    @Override
+    String answer(String target, HttpServletRequest request) {
+        if (!COMMITS_PATH.equals(target)) {
+            return null;
+        }
+        int lastCommit = commits + getChanges();
+        String page = request.getParameter("page");
+        int from = page == null ? 0 : (Integer.parseInt(page) - 1) * PAGE_SIZE;
+        // not thread safe, one per request
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder json = new StringBuilder("{\"commits\":[");
+        for (int i = from; i < Math.min(lastCommit, from + PAGE_SIZE); i++) {
+            if (i > from) {
+                json.append(',');
+            }
+            appendCommit(json, lastCommit - i, dateFormat);
+        }
+        return json.append("]}").toString();
+    }
+
+    private void appendCommit(StringBuilder json, int number, SimpleDateFormat dateFormat) {
+        String date = dateFormat.format(new Date(getStartTime() - (commits - number) * 60000L));
+        // the format of joda, with a colon in the offset
+        date = date.substring(0, date.length() - 2) + ":" + date.substring(date.length() - 2);
+        String id = String.format("%040x", number);
+        String author = "{\"name\":\"user" + number % 5 + "\",\"login\":\"user" + number % 5 + "\",\"email\":\"user" + number % 5 + "@example.com\"}";
+        StringBuilder message = new StringBuilder("commit ").append(number);
+        while (message.length() < messageSize) {
+            message.append(" lorem ipsum");
+        }
+        json.append("{\"parents\":[{\"id\":\"").append(String.format("%040x", number - 1)).append("\"}]")
+                .append(",\"author\":").append(author)
+                .append(",\"url\":\"/xebia-france/dev-radar/commit/").append(id).append('"')
+                .append(",\"id\":\"").append(id).append('"')
+                .append(",\"committed_date\":\"").append(date).append('"')
+                .append(",\"authored_date\":\"").append(date).append('"')
+                .append(",\"message\":\"").append(message).append('"')
+                .append(",\"tree\":\"").append(id).append('"')
+                .append(",\"committer\":").append(author).append('}');
+    }
+}
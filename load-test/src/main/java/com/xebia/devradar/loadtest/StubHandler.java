@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar.loadtest;
+
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Answer json after a fixed latency, or fail with a 500 at the given rate.
+ * The data of the stub grows by one build or commit every change interval, so that timelines are published again.
+ */
+abstract class StubHandler extends AbstractHandler {
+
+    private final long latencyMillis;
+
+    private final double errorRate;
+
+    private final long changeIntervalMillis;
+
+    private final long startTime = System.currentTimeMillis();
+
+    private final Random random = new Random();
+
+    StubHandler(long latencyMillis, double errorRate, long changeIntervalMillis) {
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.changeIntervalMillis = changeIntervalMillis;
+    }
+
+    @Override
+    public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch) throws IOException {
+        ((Request) request).setHandled(true);
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (random.nextDouble() < errorRate) {
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        String json = answer(target, request);
+        if (json == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        byte[] bytes = json.getBytes("UTF-8");
+        response.setContentType(getContentType());
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+    }
+
+    /**
+     * @return the number of changes since the stub started
+     */
+    int getChanges() {
+        return changeIntervalMillis <= 0 ? 0 : (int) ((System.currentTimeMillis() - startTime) / changeIntervalMillis);
+    }
+
+    long getStartTime() {
+        return startTime;
+    }
+
+    String getContentType() {
+        return "application/json;charset=UTF-8";
+    }
+
+    /**
+     * @return the json answered to the request, null for a 404
+     */
+    abstract String answer(String target, HttpServletRequest request);
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar.loadtest;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Hudson job with numbered builds, newest first, answering the json api requests of <code>HudsonFetcher</code>:
+ * the builds of the job, a range of them, one build and the mail of a user.
+ */
+class StubHudson extends StubHandler {
+
+    private static final Pattern RANGE = Pattern.compile("\\{(\\d+),(\\d+)\\}");
+
+    private static final Pattern BUILD = Pattern.compile("/(\\d+)/api/json");
+
+    private static final Pattern USER = Pattern.compile("/user/([^/]+)/api/json");
+
+    private static final String[] RESULTS = {"SUCCESS", "SUCCESS", "SUCCESS", "UNSTABLE", "FAILURE"};
+
+    private final String jobPath;
+
+    private final int builds;
+
+    StubHudson(String job, int builds, long latencyMillis, double errorRate, long changeIntervalMillis) {
+        super(latencyMillis, errorRate, changeIntervalMillis);
+        this.jobPath = "/job/" + job;
+        this.builds = builds;
+    }
+
+    @Override
+    String getContentType() {
+        // as Hudson does
+        return "application/javascript;charset=UTF-8";
+    }
+
+    @Override
+    String answer(String target, HttpServletRequest request) {
+        int lastNumber = builds + getChanges();
+        Matcher user = USER.matcher(target);
+        if (user.matches()) {
+            return "{\"property\":[{\"address\":\"" + user.group(1) + "@example.com\"}]}";
+        }
+        if (!target.startsWith(jobPath)) {
+            return null;
+        }
+        String jobTarget = target.substring(jobPath.length());
+        if ("/api/json".equals(jobTarget)) {
+            int from = 0;
+            int to = lastNumber;
+            String tree = request.getParameter("tree");
+            Matcher range = RANGE.matcher(tree == null ? "" : tree);
+            if (range.find()) {
+                from = Integer.parseInt(range.group(1));
+                to = Math.min(lastNumber, Integer.parseInt(range.group(2)));
+            }
+            StringBuilder json = new StringBuilder("{\"builds\":[");
+            for (int i = from; i < to; i++) {
+                if (i > from) {
+                    json.append(',');
+                }
+                appendBuild(json, lastNumber - i);
+            }
+            return json.append("]}").toString();
+        }
+        Matcher build = BUILD.matcher(jobTarget);
+        if (build.matches()) {
+            int number = Integer.parseInt(build.group(1));
+            if (number < 1 || number > lastNumber) {
+                return null;
+            }
+            StringBuilder json = new StringBuilder();
+            appendBuild(json, number);
+            return json.toString();
+        }
+        return null;
+    }
+
+    private void appendBuild(StringBuilder json, int number) {
+        json.append("{\"actions\":[{\"causes\":[{\"userName\":\"user").append(number % 7).append("\"}]},{}]")
+                .append(",\"building\":false,\"number\":").append(number)
+                .append(",\"result\":\"").append(RESULTS[number % RESULTS.length]).append('"')
+                .append(",\"timestamp\":").append(getStartTime() - (builds - number) * 60000L)
+                .append(",\"culprits\":[{\"absoluteUrl\":\"http://hudson/user/user").append(number % 5)
+                .append("\",\"fullName\":\"user").append(number % 5).append("\"}]}");
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The interval between two fetches of a source, adapted to how often it gives new events.
+ * A fetch with new events brings the interval back to the minimum, so that active sources stay fresh,
+ * each fetch without new events lengthens it by half, up to the maximum, so that idle sources are left alone.
+ * Not thread safe: guarded by its workspace.
+ */
+class AdaptivePollInterval {
+
+    private final long minNanos;
+
+    private final long maxNanos;
+
+    private long intervalNanos;
+
+    private long nextPollTime;
+
+    private boolean polled;
+
+    AdaptivePollInterval(long min, long max, TimeUnit unit) {
+        this.minNanos = unit.toNanos(min);
+        this.maxNanos = Math.max(minNanos, unit.toNanos(max));
+        this.intervalNanos = minNanos;
+    }
+
+    /**
+     * @return true if the source should be fetched by the poll starting at <code>now</code>
+     */
+    boolean isDue(long now) {
+        return !polled || now - nextPollTime >= 0;
+    }
+
+    /**
+     * Adapt the interval after a fetch started at <code>now</code>.
+     */
+    void fetched(long now, boolean newEvents) {
+        if (newEvents) {
+            intervalNanos = minNanos;
+        } else {
+            intervalNanos = Math.min(maxNanos, intervalNanos + Math.max(1, intervalNanos / 2));
+        }
+        polled = true;
+        nextPollTime = now + intervalNanos;
+    }
+
+    /**
+     * Retry a source which failed after the same interval, its circuit breaker backs off if it keeps failing.
+     */
+    void failed(long now) {
+        polled = true;
+        nextPollTime = now + intervalNanos;
+    }
+
+    long getIntervalNanos() {
+        return intervalNanos;
+    }
+}
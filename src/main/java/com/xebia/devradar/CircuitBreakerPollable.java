@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stop fetching a source which keeps failing, so that polls do not wait for a dead upstream.
+ * <p>
+ * After <code>failureThreshold</code> consecutive failures the circuit opens: fetches answer the events of the
+ * last successful fetch without calling the source, until a jittered backoff elapses. Then a single trial fetch
+ * is let through: the circuit closes if it succeeds, or opens again for twice the backoff, up to
+ * <code>maxBackoff</code>. A fetch started while the previous one is still running, e.g. blocked on a socket
+ * after the deadline of the <code>FetchStage</code>, answers the last events too, so that threads do not pile up.
+ */
+public class CircuitBreakerPollable implements CachedPollable, ResumablePollable {
+
+    static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    static final long DEFAULT_BACKOFF_SECONDS = 10;
+
+    static final long DEFAULT_MAX_BACKOFF_SECONDS = 600;
+
+    static final String OPENINGS_METRIC = "devradar_circuit_openings_total";
+
+    static final String SHORT_CIRCUITS_METRIC = "devradar_circuit_short_circuits_total";
+
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreakerPollable.class.getName());
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final Pollable source;
+
+    private final int failureThreshold;
+
+    private final long backoffNanos;
+
+    private final long maxBackoffNanos;
+
+    private final Metrics.Counter openingsCounter;
+
+    private final Metrics.Counter shortCircuitsCounter;
+
+    // default for test
+    Random random = new Random();
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    /*
+     * number of times the circuit opened since it was last closed, doubling the backoff each time
+     */
+    private int openings;
+
+    private long retryTime;
+
+    private boolean fetching;
+
+    private Set<Event> lastEvents = Collections.emptySet();
+
+    private volatile long lastSuccessTime;
+
+    public CircuitBreakerPollable(Pollable source) {
+        this(source, DEFAULT_FAILURE_THRESHOLD, DEFAULT_BACKOFF_SECONDS, DEFAULT_MAX_BACKOFF_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public CircuitBreakerPollable(Pollable source, int failureThreshold, long backoff, long maxBackoff, TimeUnit unit) {
+        this.source = source;
+        this.failureThreshold = failureThreshold;
+        this.backoffNanos = unit.toNanos(backoff);
+        this.maxBackoffNanos = unit.toNanos(maxBackoff);
+        String url = String.valueOf(source.getUrl());
+        this.openingsCounter = Metrics.counter(OPENINGS_METRIC, "Times the circuit of a source opened", "source", url);
+        this.shortCircuitsCounter = Metrics.counter(SHORT_CIRCUITS_METRIC, "Fetches of a source answered without calling it", "source", url);
+    }
+
+    /**
+     * @return the events of the source, or those of its last successful fetch while the circuit is open
+     */
+    @Override
+    public Set<Event> fetch() {
+        synchronized (this) {
+            if (fetching || (state == State.OPEN && nanoTime() - retryTime < 0)) {
+                shortCircuitsCounter.increment();
+                return lastEvents;
+            }
+            if (state == State.OPEN) {
+                state = State.HALF_OPEN;
+            }
+            fetching = true;
+        }
+
+        Set<Event> events = null;
+        boolean fetched = false;
+        try {
+            events = source.fetch();
+            fetched = true;
+        } finally {
+            // an error counts as a failure too, otherwise the source would be short-circuited forever
+            if (!fetched) {
+                onFailure();
+            }
+        }
+        onSuccess(events);
+        return events;
+    }
+
+    private synchronized void onSuccess(Set<Event> events) {
+        fetching = false;
+        if (state != State.CLOSED) {
+            LOGGER.info("Closing the circuit of " + getUrl());
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openings = 0;
+        lastEvents = events;
+        lastSuccessTime = System.currentTimeMillis();
+    }
+
+    private synchronized void onFailure() {
+        fetching = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            long backoff = getBackoffNanos(openings++);
+            state = State.OPEN;
+            retryTime = nanoTime() + backoff;
+            openingsCounter.increment();
+            LOGGER.warning("Opening the circuit of " + getUrl() + " for " + TimeUnit.NANOSECONDS.toSeconds(backoff) + "s after " + consecutiveFailures + " failures");
+        }
+    }
+
+    /**
+     * @return the backoff doubled at each opening, between half and all of it so that sources failing
+     * together are not retried together
+     */
+    long getBackoffNanos(int openings) {
+        long backoff = maxBackoffNanos;
+        if (openings < Long.numberOfLeadingZeros(backoffNanos) - 1) {
+            backoff = Math.min(maxBackoffNanos, backoffNanos << openings);
+        }
+        return backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+    }
+
+    // default for test
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    @Override
+    public long getLastSuccessTime() {
+        return lastSuccessTime;
+    }
+
+    @Override
+    public void resume(Collection<Event> events) {
+        if (source instanceof ResumablePollable) {
+            ((ResumablePollable) source).resume(events);
+        }
+    }
+
+    @Override
+    public String getUrl() {
+        return source.getUrl();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import java.io.File;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Start the background polling of the workspaces with the web application and stop it with it.
+ */
+public class DevRadarContextListener implements ServletContextListener {
+
+    static final String POLLER_THREADS_PARAM = "devradar.poller.threads";
+
+    static final String POLL_INTERVAL_PARAM = "devradar.poll.interval.seconds";
+
+    static final String MAX_POLL_INTERVAL_PARAM = "devradar.poll.max.interval.seconds";
+
+    static final String FETCHER_THREADS_PARAM = "devradar.fetcher.threads";
+
+    static final String FETCH_TIMEOUT_PARAM = "devradar.fetch.timeout.seconds";
+
+    static final String HTTP_CONNECTIONS_PER_HOST_PARAM = "devradar.http.connections.per.host";
+
+    static final String HTTP_CONNECT_TIMEOUT_PARAM = "devradar.http.connect.timeout.seconds";
+
+    static final String HTTP_READ_TIMEOUT_PARAM = "devradar.http.read.timeout.seconds";
+
+    static final String TIMELINE_SIZE_PARAM = "devradar.timeline.size";
+
+    static final String WORKSPACE_IDLE_PARAM = "devradar.workspace.idle.minutes";
+
+    static final String MAX_WORKSPACES_PARAM = "devradar.workspace.max";
+
+    /**
+     * requests for updates held at once, below the size of the thread pool of the servlet container
+     */
+    static final String MAX_UPDATE_WAITERS_PARAM = "devradar.updates.max.waiters";
+
+    /**
+     * directory of the event logs of the workspaces, none to keep the events in memory only
+     */
+    static final String DATA_DIR_PARAM = "devradar.data.dir";
+
+    static final String EVENT_LOG_SYNC_PARAM = "devradar.eventlog.sync.seconds";
+
+    static final String HUDSON_URL_PARAM = "devradar.hudson.url";
+
+    static final String HUDSON_JOB_PARAM = "devradar.hudson.job";
+
+    static final String GITHUB_URL_PARAM = "devradar.github.url";
+
+    /**
+     * secret of the GitHub hook, which signs its pushes with it, none to refuse the pushes
+     */
+    static final String GITHUB_HOOK_SECRET_PARAM = "devradar.hooks.github.secret";
+
+    /**
+     * token in the url of the Hudson hook, none to refuse the notifications
+     */
+    static final String HUDSON_HOOK_TOKEN_PARAM = "devradar.hooks.hudson.token";
+
+    static final String POLL_SCHEDULER_ATTRIBUTE = PollScheduler.class.getName();
+
+    static final String FETCH_STAGE_ATTRIBUTE = FetchStage.class.getName();
+
+    static final String WORKSPACE_REGISTRY_ATTRIBUTE = WorkspaceRegistry.class.getName();
+
+    static final String UPDATE_WAITERS_ATTRIBUTE = WorkspaceResource.class.getName() + ".updateWaiters";
+
+    private static final int DEFAULT_POLLER_THREADS = 2;
+
+    private static final long DEFAULT_POLL_INTERVAL_SECONDS = 60;
+
+    private static final long DEFAULT_MAX_POLL_INTERVAL_SECONDS = 900;
+
+    private static final int DEFAULT_FETCHER_THREADS = 8;
+
+    private static final long DEFAULT_FETCH_TIMEOUT_SECONDS = 30;
+
+    private static final long DEFAULT_WORKSPACE_IDLE_MINUTES = 30;
+
+    private static final long DEFAULT_EVENT_LOG_SYNC_SECONDS = 5;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private static final Logger LOGGER = Logger.getLogger(DevRadarContextListener.class.getName());
+
+    @Override
+    public void contextInitialized(ServletContextEvent servletContextEvent) {
+        ServletContext servletContext = servletContextEvent.getServletContext();
+
+        HttpClients.configure(getIntParameter(servletContext, HTTP_CONNECTIONS_PER_HOST_PARAM, HttpClients.DEFAULT_MAX_CONNECTIONS_PER_HOST),
+                HttpClients.DEFAULT_MAX_CONNECTIONS,
+                (int) TimeUnit.SECONDS.toMillis(getLongParameter(servletContext, HTTP_CONNECT_TIMEOUT_PARAM, TimeUnit.MILLISECONDS.toSeconds(HttpClients.DEFAULT_CONNECT_TIMEOUT_MILLIS))),
+                (int) TimeUnit.SECONDS.toMillis(getLongParameter(servletContext, HTTP_READ_TIMEOUT_PARAM, TimeUnit.MILLISECONDS.toSeconds(HttpClients.DEFAULT_READ_TIMEOUT_MILLIS))));
+
+        PollScheduler pollScheduler = new PollScheduler(getIntParameter(servletContext, POLLER_THREADS_PARAM, DEFAULT_POLLER_THREADS));
+        FetchStage fetchStage = new FetchStage(getIntParameter(servletContext, FETCHER_THREADS_PARAM, DEFAULT_FETCHER_THREADS),
+                getLongParameter(servletContext, FETCH_TIMEOUT_PARAM, DEFAULT_FETCH_TIMEOUT_SECONDS), TimeUnit.SECONDS);
+        final WorkspaceRegistry workspaceRegistry = new WorkspaceRegistry(pollScheduler, fetchStage,
+                getLongParameter(servletContext, POLL_INTERVAL_PARAM, DEFAULT_POLL_INTERVAL_SECONDS),
+                getLongParameter(servletContext, MAX_POLL_INTERVAL_PARAM, DEFAULT_MAX_POLL_INTERVAL_SECONDS), TimeUnit.SECONDS,
+                getIntParameter(servletContext, TIMELINE_SIZE_PARAM, Timeline.MAX_SIZE),
+                getDataDir(servletContext),
+                new WorkspaceSources(getParameter(servletContext, HUDSON_URL_PARAM, WorkspaceSources.DEFAULT_HUDSON_URL),
+                        getParameter(servletContext, HUDSON_JOB_PARAM, WorkspaceSources.DEFAULT_HUDSON_JOB),
+                        getParameter(servletContext, GITHUB_URL_PARAM, WorkspaceSources.DEFAULT_GITHUB_URL)));
+        workspaceRegistry.setMaxWorkspaces(getIntParameter(servletContext, MAX_WORKSPACES_PARAM, WorkspaceRegistry.DEFAULT_MAX_WORKSPACES));
+
+        final long workspaceIdleMinutes = getLongParameter(servletContext, WORKSPACE_IDLE_PARAM, DEFAULT_WORKSPACE_IDLE_MINUTES);
+        pollScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                workspaceRegistry.evictIdle(workspaceIdleMinutes, TimeUnit.MINUTES);
+            }
+        }, 1, TimeUnit.MINUTES);
+        pollScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                workspaceRegistry.syncLogs();
+            }
+        }, getLongParameter(servletContext, EVENT_LOG_SYNC_PARAM, DEFAULT_EVENT_LOG_SYNC_SECONDS), TimeUnit.SECONDS);
+
+        servletContext.setAttribute(POLL_SCHEDULER_ATTRIBUTE, pollScheduler);
+        servletContext.setAttribute(FETCH_STAGE_ATTRIBUTE, fetchStage);
+        servletContext.setAttribute(WORKSPACE_REGISTRY_ATTRIBUTE, workspaceRegistry);
+        servletContext.setAttribute(UPDATE_WAITERS_ATTRIBUTE,
+                new Semaphore(getIntParameter(servletContext, MAX_UPDATE_WAITERS_PARAM, WorkspaceResource.DEFAULT_MAX_UPDATE_WAITERS)));
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent servletContextEvent) {
+        ServletContext servletContext = servletContextEvent.getServletContext();
+        PollScheduler pollScheduler = (PollScheduler) servletContext.getAttribute(POLL_SCHEDULER_ATTRIBUTE);
+        if (pollScheduler != null) {
+            pollScheduler.shutdown();
+        }
+        FetchStage fetchStage = (FetchStage) servletContext.getAttribute(FETCH_STAGE_ATTRIBUTE);
+        if (fetchStage != null) {
+            fetchStage.shutdown();
+        }
+        if (pollScheduler != null) {
+            // a poll in progress would append to a closed log
+            awaitTermination(pollScheduler);
+        }
+        WorkspaceRegistry workspaceRegistry = (WorkspaceRegistry) servletContext.getAttribute(WORKSPACE_REGISTRY_ATTRIBUTE);
+        if (workspaceRegistry != null) {
+            workspaceRegistry.close();
+        }
+        HttpClients.shutdown();
+        servletContext.removeAttribute(POLL_SCHEDULER_ATTRIBUTE);
+        servletContext.removeAttribute(FETCH_STAGE_ATTRIBUTE);
+        servletContext.removeAttribute(WORKSPACE_REGISTRY_ATTRIBUTE);
+    }
+
+    private void awaitTermination(PollScheduler pollScheduler) {
+        try {
+            if (!pollScheduler.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warning("Polls still in progress after " + SHUTDOWN_TIMEOUT_SECONDS + "s, their events may not be logged");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private File getDataDir(ServletContext servletContext) {
+        String value = servletContext.getInitParameter(DATA_DIR_PARAM);
+        return value == null || value.trim().length() == 0 ? null : new File(value.trim());
+    }
+
+    private String getParameter(ServletContext servletContext, String name, String defaultValue) {
+        String value = servletContext.getInitParameter(name);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    private int getIntParameter(ServletContext servletContext, String name, int defaultValue) {
+        String value = servletContext.getInitParameter(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private long getLongParameter(ServletContext servletContext, String name, long defaultValue) {
+        String value = servletContext.getInitParameter(name);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+}
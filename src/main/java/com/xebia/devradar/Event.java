@@ -18,44 +18,80 @@
  */
 package com.xebia.devradar;
 
-import org.apache.commons.codec.digest.DigestUtils;
-
-import java.util.Date;
-
 /*
  * Use public field instead of private+getter&setter for immutable fields
+ *
+ * Two events are equal when they have the same id, given by their source (commit SHA, build and user, ...),
+ * so that an event fetched again is recognized. Events without id are compared on all their fields.
  */
 public class Event {
 
-    private static final String GRAVATAR_URL = "http://www.gravatar.com/avatar/";
-    private static final String DEFAULT_IMAGE = "?d=mm";
-
+    public final String id;
     public final long timestamp;
     public final String author;
     public final String message;
     public final String gravatarUrl;
     public final EventLevel level;
 
-    public Event(long timestamp, String author, String message, String email, EventLevel level) {
+    public Event(String id, long timestamp, String author, String message, String email, EventLevel level) {
+        this(id, timestamp, author, message, level, GravatarUrlCache.getShared().getUrl(email));
+    }
+
+    private Event(String id, long timestamp, String author, String message, EventLevel level, String gravatarUrl) {
+        this.id = id;
         this.timestamp = timestamp;
         this.author = author;
         this.message = message;
-        this.gravatarUrl = getGravatarUrl(email);
+        this.gravatarUrl = gravatarUrl;
         this.level = level;
     }
 
+    public Event(long timestamp, String author, String message, String email, EventLevel level) {
+        this(null, timestamp, author, message, email, level);
+    }
+
     public Event(long timestamp, String author, String message, String email) {
         this(timestamp, author, message, email, EventLevel.UNDIFINED);
     }
 
-    private String getGravatarUrl(String email) {
-        if (email == null) {
-            email = "";
+    /**
+     * @return an event whose gravatar url is already known, as read from an <code>EventLog</code>
+     */
+    static Event withGravatarUrl(String id, long timestamp, String author, String message, String gravatarUrl, EventLevel level) {
+        return new Event(id, timestamp, author, message, level, gravatarUrl);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Event)) {
+            return false;
+        }
+        Event event = (Event) o;
+        if (id != null || event.id != null) {
+            return id != null && id.equals(event.id);
         }
-        StringBuilder builder = new StringBuilder(GRAVATAR_URL);
+        return timestamp == event.timestamp
+                && level == event.level
+                && equals(author, event.author)
+                && equals(message, event.message)
+                && equals(gravatarUrl, event.gravatarUrl);
+    }
+
+    private static boolean equals(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
 
-        builder.append(DigestUtils.md5Hex(email));
-        builder.append(DEFAULT_IMAGE);
-        return builder.toString();
+    @Override
+    public int hashCode() {
+        if (id != null) {
+            return id.hashCode();
+        }
+        int result = (int) (timestamp ^ (timestamp >>> 32));
+        result = 31 * result + (author != null ? author.hashCode() : 0);
+        result = 31 * result + (message != null ? message.hashCode() : 0);
+        return result;
     }
 }
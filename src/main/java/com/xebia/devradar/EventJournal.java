@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The events of a workspace in the order they were ingested. Each event gets the next sequence number,
+ * starting at 1, so that a client can read the events ingested after the last sequence number it has seen.
+ * Sequence numbers start again with each journal, so readers know a sequence number by a cursor holding the epoch
+ * of its journal.
+ * The events are kept in an <code>EventStore</code>, by column, so that long histories stay small.
+ */
+public class EventJournal {
+
+    /*
+     * part of the cursors, so that the sequence numbers of a previous run or of an evicted workspace
+     * are not mistaken for the ones of this journal
+     */
+    private final String epoch = Long.toString(Timeline.nextEpoch(), Character.MAX_RADIX);
+
+    /*
+     * the event of sequence number n is at row n - 1
+     */
+    private final EventStore events = new EventStore();
+
+    /**
+     * @return the sequence number of the event
+     */
+    public synchronized long append(Event event) {
+        return events.add(event) + 1;
+    }
+
+    /**
+     * @return the sequence number of the event, 0 if an equal event was already appended
+     */
+    public synchronized long appendIfAbsent(Event event) {
+        if (events.indexOf(event) >= 0) {
+            return 0;
+        }
+        return append(event);
+    }
+
+    public synchronized boolean contains(Event event) {
+        return events.indexOf(event) >= 0;
+    }
+
+    public synchronized long getLastSequence() {
+        return events.size();
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the cursor of a sequence number of this journal, <code>epoch:sequence</code>
+     */
+    String getCursor(long sequence) {
+        return epoch + ":" + sequence;
+    }
+
+    /**
+     * A cursor of another journal, from before a restart or an eviction, or no cursor at all, is read from the start:
+     * the reader knows it from the epoch of the page.
+     *
+     * @param cursor the cursor of the last page read, null to read from the start
+     * @param limit the maximum number of events read
+     * @return the events ingested after the cursor, and the cursor to read the next ones
+     */
+    public synchronized JournalPage read(String cursor, int limit) {
+        return read(getKnownSequence(cursor), limit);
+    }
+
+    /**
+     * A sequence number greater than the last one is read from the start.
+     *
+     * @param sequence the sequence number of the last event seen, 0 to read from the start
+     */
+    synchronized JournalPage read(long sequence, int limit) {
+        if (sequence < 0 || sequence > events.size()) {
+            sequence = 0;
+        }
+        int from = (int) sequence;
+        int to = (int) Math.min(events.size(), sequence + limit);
+        List<Event> page = new ArrayList<Event>(to - from);
+        for (int row = from; row < to; row++) {
+            page.add(events.get(row));
+        }
+        return new JournalPage(epoch, to, getCursor(to), page);
+    }
+
+    /**
+     * @return the sequence number of a cursor of this journal, 0 for any other cursor so that all the events are read
+     */
+    private long getKnownSequence(String cursor) {
+        String epochPrefix = epoch + ":";
+        if (cursor == null || !cursor.startsWith(epochPrefix)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(cursor.substring(epochPrefix.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
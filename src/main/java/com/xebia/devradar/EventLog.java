@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of the events of a workspace, replayed when the workspace is created again so that
+ * its timeline does not wait for the sources to be fetched again.
+ *
+ * Each record is the length of its payload, the payload and its CRC32. The payload holds the id, timestamp,
+ * author, message, gravatar url and level of an event. The file is read through a memory mapping.
+ * Appends are written at once but forced to disk only by <code>sync()</code>, called periodically: a crash may
+ * lose the last events or leave a partial record, which is truncated when the file is opened again.
+ */
+public class EventLog {
+
+    private static final Logger LOGGER = Logger.getLogger(EventLog.class.getName());
+
+    private static final int LENGTH_SIZE = 4;
+
+    private static final int CRC_SIZE = 4;
+
+    /*
+     * a larger length can only be a corrupted one, so larger events are not appended
+     */
+    static final int MAX_PAYLOAD_SIZE = 1 << 20;
+
+    private static final int NULL_STRING = -1;
+
+    private static final int NULL_LEVEL = -1;
+
+    private static final EventLevel[] LEVELS = EventLevel.values();
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    /*
+     * end of the last valid record
+     */
+    private long size;
+
+    private boolean synced = true;
+
+    private EventLog(File file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Open the log, created if it does not exist. A partial or corrupted record at the end of the log,
+     * left by a crash, is truncated with everything after it.
+     */
+    public static EventLog open(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        EventLog eventLog = new EventLog(file, channel);
+        try {
+            eventLog.recover();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return eventLog;
+    }
+
+    private void recover() throws IOException {
+        long fileSize = channel.size();
+        MappedByteBuffer buffer = map(fileSize);
+        while (buffer.remaining() > 0 && readPayload(buffer) != null) {
+            size = buffer.position();
+        }
+        if (size < fileSize) {
+            LOGGER.log(Level.WARNING, "Truncate " + (fileSize - size) + " bytes of invalid records at the end of " + file);
+            channel.truncate(size);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @return the events of the log, in the order they were appended
+     * @throws IOException if a record is malformed, though its CRC is valid
+     */
+    public synchronized List<Event> replay() throws IOException {
+        List<Event> events = new ArrayList<Event>();
+        // authors and gravatar urls are repeated across events, one instance of each is kept
+        Map<String, String> strings = new HashMap<String, String>();
+        MappedByteBuffer buffer = map(size);
+        for (ByteBuffer payload = readPayload(buffer); payload != null; payload = readPayload(buffer)) {
+            events.add(readEvent(payload, strings));
+        }
+        return events;
+    }
+
+    /**
+     * Write the events at the end of the log, without forcing them to disk.
+     * An event larger than <code>MAX_PAYLOAD_SIZE</code> is left out, as it would be taken for a corrupted record.
+     */
+    public synchronized void append(Collection<Event> events) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream(events.size() * 256);
+        DataOutputStream output = new DataOutputStream(records);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+        CRC32 crc = new CRC32();
+        for (Event event : events) {
+            payload.reset();
+            writeEvent(new DataOutputStream(payload), event);
+            byte[] bytes = payload.toByteArray();
+            if (bytes.length > MAX_PAYLOAD_SIZE) {
+                LOGGER.log(Level.WARNING, "Event " + event.id + " of " + bytes.length + " bytes is too large to be logged in " + file);
+                continue;
+            }
+            crc.reset();
+            crc.update(bytes);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            output.writeInt((int) crc.getValue());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, size + buffer.position());
+        }
+        size += buffer.limit();
+        synced = false;
+    }
+
+    /**
+     * Force the events appended since the last sync to disk.
+     */
+    public synchronized void sync() throws IOException {
+        if (!synced) {
+            channel.force(false);
+            synced = true;
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    private MappedByteBuffer map(long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException(file + " is too large to be mapped");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+
+    /**
+     * @return the payload of the next record, or null if the record is partial or corrupted
+     */
+    private ByteBuffer readPayload(ByteBuffer buffer) {
+        if (buffer.remaining() < LENGTH_SIZE) {
+            return null;
+        }
+        int length = buffer.getInt(buffer.position());
+        if (length < 0 || length > MAX_PAYLOAD_SIZE || buffer.remaining() < LENGTH_SIZE + length + CRC_SIZE) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.position(buffer.position() + LENGTH_SIZE);
+        buffer.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if (buffer.getInt() != (int) crc.getValue()) {
+            return null;
+        }
+        return ByteBuffer.wrap(payload);
+    }
+
+    private void writeEvent(DataOutputStream output, Event event) throws IOException {
+        writeString(output, event.id);
+        output.writeLong(event.timestamp);
+        writeString(output, event.author);
+        writeString(output, event.message);
+        writeString(output, event.gravatarUrl);
+        output.writeByte(event.level == null ? NULL_LEVEL : event.level.ordinal());
+    }
+
+    private Event readEvent(ByteBuffer payload, Map<String, String> strings) throws IOException {
+        try {
+            String id = readString(payload);
+            long timestamp = payload.getLong();
+            String author = share(readString(payload), strings);
+            String message = readString(payload);
+            String gravatarUrl = share(readString(payload), strings);
+            byte level = payload.get();
+            if (level != NULL_LEVEL && (level < 0 || level >= LEVELS.length)) {
+                throw new IOException("Malformed record in " + file + ": unknown level " + level);
+            }
+            return Event.withGravatarUrl(id, timestamp, author, message, gravatarUrl, level == NULL_LEVEL ? null : LEVELS[level]);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Malformed record in " + file + ": truncated fields", e);
+        }
+    }
+
+    private void writeString(DataOutputStream output, String string) throws IOException {
+        if (string == null) {
+            output.writeInt(NULL_STRING);
+        } else {
+            byte[] bytes = string.getBytes("UTF-8");
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    private String readString(ByteBuffer payload) throws IOException {
+        int length = payload.getInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        if (length < 0 || length > payload.remaining()) {
+            throw new IOException("Malformed record in " + file + ": string of " + length + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private String share(String string, Map<String, String> strings) {
+        if (string == null) {
+            return null;
+        }
+        String sharedString = strings.get(string);
+        if (sharedString == null) {
+            strings.put(string, string);
+            sharedString = string;
+        }
+        return sharedString;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The events of a long history, stored by column rather than as objects:
+ * <ul>
+ * <li>timestamps in <code>long</code>s and levels in <code>byte</code>s</li>
+ * <li>authors, gravatar urls and the source part of the ids (up to the build number, or the <code>github:</code>
+ * prefix) as ids of a <code>StringDictionary</code>, as well as the short messages repeated by builds</li>
+ * <li>the rest of the ids and the other messages in a pool of utf-8 bytes, hexadecimal SHAs packed two digits
+ * per byte</li>
+ * <li>an open addressing hash index of the rows, to recognize an event stored before</li>
+ * </ul>
+ * Columns grow by chunks, so that a large history is neither copied nor left with unused capacity.
+ * Events are handed out as views, built on each read. Not thread safe.
+ */
+class EventStore {
+
+    private static final byte NULL_LEVEL = -1;
+
+    private static final EventLevel[] LEVELS = EventLevel.values();
+
+    private static final int NULL_REF = -1;
+
+    /*
+     * messages up to this length are looked up in the dictionary, until it holds MAX_DICTIONARY_MESSAGES of them
+     */
+    private static final int MAX_DICTIONARY_MESSAGE_LENGTH = 24;
+
+    private static final int MAX_DICTIONARY_MESSAGES = 4096;
+
+    private static final int CHUNK_SHIFT = 10;
+
+    private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+
+    private static final int ROW_MASK = CHUNK_ROWS - 1;
+
+    private static final int INITIAL_INDEX_SIZE = 64;
+
+    private final StringDictionary dictionary = new StringDictionary();
+
+    private final StringDictionary messageDictionary = new StringDictionary();
+
+    private final Utf8Pool pool = new Utf8Pool();
+
+    private int size;
+
+    private long[][] timestamps = new long[0][];
+
+    private byte[][] levels = new byte[0][];
+
+    private int[][] authorIds = new int[0][];
+
+    private int[][] gravatarUrlIds = new int[0][];
+
+    private int[][] idPrefixIds = new int[0][];
+
+    /*
+     * refs of the rest of the ids in the pool
+     */
+    private int[][] idSuffixRefs = new int[0][];
+
+    /*
+     * refs of the messages in the pool, or -(id + 2) of the messages of the dictionary
+     */
+    private int[][] messageRefs = new int[0][];
+
+    /*
+     * the high byte of the hash code of the events, to skip most rows while probing the index without reading them
+     */
+    private byte[][] hashTags = new byte[0][];
+
+    /*
+     * row + 1 of the events by hash code, 0 for an empty slot; at most seven eighths full
+     */
+    private int[] index = new int[INITIAL_INDEX_SIZE];
+
+    /**
+     * @return the row of the event
+     */
+    int add(Event event) {
+        if ((size & ROW_MASK) == 0) {
+            addChunk();
+        }
+        if ((size + 1) * 8L > index.length * 7L) {
+            rehash(index.length * 2);
+        }
+        int row = size++;
+        int chunk = row >>> CHUNK_SHIFT;
+        int i = row & ROW_MASK;
+        int prefixLength = getIdPrefixLength(event.id);
+        timestamps[chunk][i] = event.timestamp;
+        levels[chunk][i] = event.level == null ? NULL_LEVEL : (byte) event.level.ordinal();
+        authorIds[chunk][i] = dictionary.idOf(event.author);
+        gravatarUrlIds[chunk][i] = dictionary.idOf(event.gravatarUrl);
+        idPrefixIds[chunk][i] = dictionary.idOf(event.id == null ? null : event.id.substring(0, prefixLength));
+        idSuffixRefs[chunk][i] = pool.add(event.id == null ? null : event.id.substring(prefixLength));
+        messageRefs[chunk][i] = getMessageRef(event.message);
+        int hash = spread(event.hashCode());
+        hashTags[chunk][i] = (byte) (hash >>> 24);
+        insert(row, hash);
+        return row;
+    }
+
+    /**
+     * @return the row of an event equal to <code>event</code>, -1 if none was stored
+     */
+    int indexOf(Event event) {
+        int hash = spread(event.hashCode());
+        byte hashTag = (byte) (hash >>> 24);
+        int mask = index.length - 1;
+        for (int slot = hash & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            int row = index[slot] - 1;
+            if (hashTags[row >>> CHUNK_SHIFT][row & ROW_MASK] == hashTag && get(row).equals(event)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a view of the event stored at <code>row</code>
+     */
+    Event get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + size);
+        }
+        int chunk = row >>> CHUNK_SHIFT;
+        int i = row & ROW_MASK;
+        String idPrefix = dictionary.get(idPrefixIds[chunk][i]);
+        String id = idPrefix == null ? null : idPrefix + pool.get(idSuffixRefs[chunk][i]);
+        int messageRef = messageRefs[chunk][i];
+        String message = messageRef < NULL_REF ? messageDictionary.get(-messageRef - 2) : pool.get(messageRef);
+        byte level = levels[chunk][i];
+        return Event.withGravatarUrl(id, timestamps[chunk][i], dictionary.get(authorIds[chunk][i]), message,
+                dictionary.get(gravatarUrlIds[chunk][i]), level == NULL_LEVEL ? null : LEVELS[level]);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /*
+     * the ids of an event source share everything up to the build number, e.g. hudson:<job url>#, or up to the SHA
+     */
+    private int getIdPrefixLength(String id) {
+        if (id == null) {
+            return 0;
+        }
+        int separator = id.lastIndexOf('#');
+        if (separator < 0) {
+            separator = id.indexOf(':');
+        }
+        return separator + 1;
+    }
+
+    private int getMessageRef(String message) {
+        int id = messageDictionary.find(message);
+        if (id == StringDictionary.NULL_ID && message != null && message.length() <= MAX_DICTIONARY_MESSAGE_LENGTH
+                && messageDictionary.size() < MAX_DICTIONARY_MESSAGES) {
+            id = messageDictionary.idOf(message);
+        }
+        return id == StringDictionary.NULL_ID ? pool.add(message) : -id - 2;
+    }
+
+    private void addChunk() {
+        int chunks = timestamps.length;
+        timestamps = Arrays.copyOf(timestamps, chunks + 1);
+        timestamps[chunks] = new long[CHUNK_ROWS];
+        levels = addChunk(levels);
+        hashTags = addChunk(hashTags);
+        authorIds = addChunk(authorIds);
+        gravatarUrlIds = addChunk(gravatarUrlIds);
+        idPrefixIds = addChunk(idPrefixIds);
+        idSuffixRefs = addChunk(idSuffixRefs);
+        messageRefs = addChunk(messageRefs);
+    }
+
+    private static int[][] addChunk(int[][] column) {
+        int[][] grownColumn = Arrays.copyOf(column, column.length + 1);
+        grownColumn[column.length] = new int[CHUNK_ROWS];
+        return grownColumn;
+    }
+
+    private static byte[][] addChunk(byte[][] column) {
+        byte[][] grownColumn = Arrays.copyOf(column, column.length + 1);
+        grownColumn[column.length] = new byte[CHUNK_ROWS];
+        return grownColumn;
+    }
+
+    private void insert(int row, int hash) {
+        int mask = index.length - 1;
+        int slot = hash & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = row + 1;
+    }
+
+    private void rehash(int capacity) {
+        index = new int[capacity];
+        // the hash codes are not stored: the views are built again, once per doubling of the index
+        for (int row = 0; row < size; row++) {
+            insert(row, spread(get(row).hashCode()));
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Strings stored as their length followed by their bytes, in chunks they never span.
+     * A string is referred to by its chunk and its position in the chunk, in an int.
+     */
+    private static class Utf8Pool {
+
+        private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+        private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+        private static final int CHUNK_SHIFT = 15;
+
+        private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+        private static final int POSITION_MASK = CHUNK_SIZE - 1;
+
+        private byte[][] chunks = new byte[0][];
+
+        /*
+         * position in the last chunk, a full chunk at first
+         */
+        private int position = CHUNK_SIZE;
+
+        /**
+         * @return the ref of the string
+         */
+        int add(String string) {
+            if (string == null) {
+                return NULL_REF;
+            }
+            boolean hex = isHex(string);
+            byte[] bytes = hex ? packHex(string) : string.getBytes(UTF_8);
+            int header = bytes.length << 1 | (hex ? 1 : 0);
+            int length = getVarIntLength(header) + bytes.length;
+            if (position + length > CHUNK_SIZE) {
+                chunks = Arrays.copyOf(chunks, chunks.length + 1);
+                // a string longer than a chunk gets a chunk of its own
+                chunks[chunks.length - 1] = new byte[Math.max(CHUNK_SIZE, length)];
+                position = 0;
+            }
+            int chunk = chunks.length - 1;
+            int ref = chunk << CHUNK_SHIFT | position;
+            position = writeVarInt(chunks[chunk], position, header);
+            System.arraycopy(bytes, 0, chunks[chunk], position, bytes.length);
+            position = length > CHUNK_SIZE ? CHUNK_SIZE : position + bytes.length;
+            return ref;
+        }
+
+        String get(int ref) {
+            if (ref == NULL_REF) {
+                return null;
+            }
+            byte[] chunk = chunks[ref >>> CHUNK_SHIFT];
+            int position = ref & POSITION_MASK;
+            int header = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = chunk[position++];
+                header |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            int length = header >>> 1;
+            if ((header & 1) == 0) {
+                return new String(chunk, position, length, UTF_8);
+            }
+            char[] digits = new char[length * 2];
+            for (int i = 0; i < length; i++) {
+                digits[2 * i] = HEX_DIGITS[(chunk[position + i] >> 4) & 0xf];
+                digits[2 * i + 1] = HEX_DIGITS[chunk[position + i] & 0xf];
+            }
+            return new String(digits);
+        }
+
+        /*
+         * lower case only, so that the string is read back as is
+         */
+        private static boolean isHex(String string) {
+            if (string.length() < 2 || string.length() % 2 != 0) {
+                return false;
+            }
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static byte[] packHex(String string) {
+            byte[] bytes = new byte[string.length() / 2];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) (Character.digit(string.charAt(2 * i), 16) << 4 | Character.digit(string.charAt(2 * i + 1), 16));
+            }
+            return bytes;
+        }
+
+        private static int getVarIntLength(int value) {
+            int length = 1;
+            while ((value >>>= 7) != 0) {
+                length++;
+            }
+            return length;
+        }
+
+        private static int writeVarInt(byte[] chunk, int position, int value) {
+            while ((value & ~0x7f) != 0) {
+                chunk[position++] = (byte) (value & 0x7f | 0x80);
+                value >>>= 7;
+            }
+            chunk[position++] = (byte) value;
+            return position;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fetch all the sources of a workspace in parallel, so that a poll lasts as long as the slowest source
+ * instead of the sum of all of them. A source which fails or misses its deadline is left out of the
+ * results: the events it previously gave are kept by the workspace.
+ */
+public class FetchStage {
+
+    /**
+     * Fetch sources one after the other in the polling thread, without deadline.
+     */
+    static final FetchStage DIRECT = new FetchStage(null, 0, TimeUnit.MILLISECONDS);
+
+    private static final Logger LOGGER = Logger.getLogger(FetchStage.class.getName());
+
+    static final String FETCH_SECONDS_METRIC = "devradar_fetch_seconds";
+
+    static final String FETCH_FAILURES_METRIC = "devradar_fetch_failures_total";
+
+    private final ExecutorService executor;
+
+    private final long timeoutNanos;
+
+    /*
+     * by source url, so that the metrics of a source are looked up once whatever the number of its subscriptions
+     */
+    private final ConcurrentMap<String, SourceMetrics> sourceMetrics = new ConcurrentHashMap<String, SourceMetrics>();
+
+    public FetchStage(int poolSize, long timeout, TimeUnit unit) {
+        this(Executors.newFixedThreadPool(poolSize, new DaemonThreadFactory("devradar-fetcher")), timeout, unit);
+    }
+
+    FetchStage(ExecutorService executor, long timeout, TimeUnit unit) {
+        this.executor = executor;
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * @return the events of each source which answered before the deadline
+     */
+    public Map<Pollable, Set<Event>> fetch(Collection<Pollable> fetchers) {
+        if (executor == null) {
+            return fetchSequentially(fetchers);
+        }
+
+        Map<Pollable, Future<Set<Event>>> futures = new LinkedHashMap<Pollable, Future<Set<Event>>>();
+        for (final Pollable fetcher : fetchers) {
+            futures.put(fetcher, executor.submit(new Callable<Set<Event>>() {
+                @Override
+                public Set<Event> call() {
+                    return timedFetch(fetcher);
+                }
+            }));
+        }
+
+        // all the sources are fetched at the same time, so they all share the same deadline
+        long deadline = System.nanoTime() + timeoutNanos;
+        Map<Pollable, Set<Event>> fetchedEvents = new LinkedHashMap<Pollable, Set<Event>>();
+        for (Map.Entry<Pollable, Future<Set<Event>>> future : futures.entrySet()) {
+            Pollable fetcher = future.getKey();
+            try {
+                fetchedEvents.put(fetcher, future.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.getValue().cancel(true);
+                getSourceMetrics(fetcher).failures.increment();
+                LOGGER.warning("Timeout while fetching " + fetcher.getUrl());
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.WARNING, "Cannot fetch " + fetcher.getUrl(), e.getCause());
+            } catch (InterruptedException e) {
+                cancelAll(futures.values());
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return fetchedEvents;
+    }
+
+    private Map<Pollable, Set<Event>> fetchSequentially(Collection<Pollable> fetchers) {
+        Map<Pollable, Set<Event>> fetchedEvents = new LinkedHashMap<Pollable, Set<Event>>();
+        for (Pollable fetcher : fetchers) {
+            try {
+                fetchedEvents.put(fetcher, timedFetch(fetcher));
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Cannot fetch " + fetcher.getUrl(), e);
+            }
+        }
+        return fetchedEvents;
+    }
+
+    private Set<Event> timedFetch(Pollable fetcher) {
+        SourceMetrics metrics = getSourceMetrics(fetcher);
+        long start = System.nanoTime();
+        try {
+            return fetcher.fetch();
+        } catch (RuntimeException e) {
+            metrics.failures.increment();
+            throw e;
+        } finally {
+            metrics.fetchSeconds.observeSince(start);
+        }
+    }
+
+    private SourceMetrics getSourceMetrics(Pollable fetcher) {
+        String url = String.valueOf(fetcher.getUrl());
+        SourceMetrics metrics = sourceMetrics.get(url);
+        if (metrics == null) {
+            metrics = new SourceMetrics(url);
+            SourceMetrics existingMetrics = sourceMetrics.putIfAbsent(url, metrics);
+            if (existingMetrics != null) {
+                metrics = existingMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    private void cancelAll(Collection<Future<Set<Event>>> futures) {
+        for (Future<Set<Event>> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class SourceMetrics {
+
+        final Metrics.Histogram fetchSeconds;
+
+        final Metrics.Counter failures;
+
+        SourceMetrics(String url) {
+            this.fetchSeconds = Metrics.histogram(FETCH_SECONDS_METRIC, "Time to fetch a source", "source", url);
+            this.failures = Metrics.counter(FETCH_FAILURES_METRIC, "Fetches of a source which failed or missed their deadline", "source", url);
+        }
+    }
+}
@@ -19,70 +19,265 @@
 package com.xebia.devradar;
 
 import com.sun.jersey.api.client.Client;
-import com.sun.jersey.api.client.config.ClientConfig;
-import com.sun.jersey.api.client.config.DefaultClientConfig;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.WebResource;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.joda.time.DateTime;
 import org.joda.time.format.ISODateTimeFormat;
 
+import javax.ws.rs.core.HttpHeaders;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  *  Fetch a list of commit from github and transform each of them into <code>com.xebia.devradar.Event</code>
  */
-public class GitHubFetcher implements Pollable {
+public class GitHubFetcher implements ResumablePollable {
 
-    private static final String COM_SUN_JERSEY_API_JSON_POJOMAPPING_FEATURE = "com.sun.jersey.api.json.POJOMappingFeature";
+    /**
+     * number of commits in a page of the github api
+     */
+    static final int PAGE_SIZE = 35;
+
+    static final int DEFAULT_MAX_PAGES = 3;
+
+    private static final int MAX_KNOWN_COMMITS = 1000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String EVENT_ID_PREFIX = "github:";
 
     // default for test
     String url;
 
+    private Client client;
+
+    /*
+     * number of pages read when no known commit is found, i.e. the depth of the history fetched on cold start
+     */
+    private final int maxPages;
+
+    /*
+     * ids of the last ingested commits: reading the history stops at the first of them
+     */
+    // default for test
+    Set<String> knownCommitIds = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_KNOWN_COMMITS;
+        }
+    });
+
+    /*
+     * validators and events of the last response of each url, to send conditional requests
+     */
+    // default for test
+    Map<String, CachedResponse> cachedResponses = new HashMap<String, CachedResponse>();
+
     public GitHubFetcher(String url) {
+        this(url, DEFAULT_MAX_PAGES);
+    }
+
+    public GitHubFetcher(String url, int maxPages) {
         this.url = url;
+        this.maxPages = maxPages;
     }
 
     /**
      * Fetch a set of events from a github branch specified by an url.
+     * Pages of commits are read until a commit already fetched is found, so that a fetch usually reads a single page.
+     * When github answers that the first page did not change, the events of the previous fetch are returned.
+     * The commits read are known only once the fetch succeeds, so that a failed fetch reads them again.
      * @return A set of <code>com.xebia.devradar.Event</code>
      */
     @Override
-    public Set<Event> fetch() {
-        GithubCommitsDTO githubCommitsDTO = getGitHubCommits(url);
+    public synchronized Set<Event> fetch() {
+        CachedResponse cachedResponse = cachedResponses.get(url);
         Set<Event> events = new HashSet<Event>();
+        Set<String> fetchedCommitIds = new LinkedHashSet<String>();
+        String etag = null;
+        String lastModified = null;
+
+        for (int page = 1; page <= maxPages; page++) {
+            ClientResponse response = getGitHubCommits(getPageUrl(page), page == 1 ? cachedResponse : null);
+            if (page == 1 && cachedResponse != null && response.getStatus() == ClientResponse.Status.NOT_MODIFIED.getStatusCode()) {
+                response.close();
+                return cachedResponse.events;
+            }
+            if (response.getStatus() >= 300) {
+                // the exception buffers the entity of the response, which can be closed only then
+                UniformInterfaceException e = new UniformInterfaceException(response);
+                response.close();
+                throw e;
+            }
+            if (page == 1) {
+                etag = response.getHeaders().getFirst(HttpHeaders.ETAG);
+                lastModified = response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+            }
+            if (readNewCommits(response, events, fetchedCommitIds) < PAGE_SIZE) {
+                break;
+            }
+        }
+        knownCommitIds.addAll(fetchedCommitIds);
 
-        for (GithubCommitDTO githubCommitDTO : githubCommitsDTO.commits) {
-            events.add(transformCommitToEvent(githubCommitDTO));
+        if (etag != null || lastModified != null) {
+            cachedResponses.put(url, new CachedResponse(etag, lastModified, events));
+        } else {
+            cachedResponses.remove(url);
         }
         return events;
     }
 
+    // default for test
+    String getPageUrl(int page) {
+        if (page == 1) {
+            return url;
+        }
+        return url + (url.indexOf('?') < 0 ? "?" : "&") + "page=" + page;
+    }
+
+    /**
+     * Stream the commits of a page into events, one commit at a time, until a known commit is found.
+     * @return the number of new commits read
+     */
+    private int readNewCommits(ClientResponse response, Set<Event> events, Set<String> fetchedCommitIds) {
+        int newCommits = 0;
+        try {
+            JsonParser parser = OBJECT_MAPPER.getJsonFactory().createJsonParser(response.getEntityInputStream());
+            try {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new ClientHandlerException("Invalid commits from " + url);
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    JsonToken fieldValue = parser.nextToken();
+                    if ("commits".equals(fieldName) && fieldValue == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            GithubCommitDTO githubCommitDTO = OBJECT_MAPPER.readValue(parser, GithubCommitDTO.class);
+                            if (knownCommitIds.contains(githubCommitDTO.id) || !fetchedCommitIds.add(githubCommitDTO.id)) {
+                                return newCommits;
+                            }
+                            events.add(transformCommitToEvent(githubCommitDTO));
+                            newCommits++;
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                return newCommits;
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new ClientHandlerException("Cannot read commits from " + url, e);
+        } finally {
+            response.close();
+        }
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Resume after the commits in the events: reading the history stops at the first of them.
+     * As commits are identified by their SHA whatever their branch, the commits of every branch are taken.
+     */
+    @Override
+    public synchronized void resume(Collection<Event> events) {
+        if (!knownCommitIds.isEmpty()) {
+            return;
+        }
+        List<Event> commits = new ArrayList<Event>();
+        for (Event event : events) {
+            if (event.id != null && event.id.startsWith(EVENT_ID_PREFIX)) {
+                commits.add(event);
+            }
+        }
+        // oldest first, so that the newest commits are the last ones forgotten
+        Collections.sort(commits, new Comparator<Event>() {
+            @Override
+            public int compare(Event event1, Event event2) {
+                return event1.timestamp < event2.timestamp ? -1 : (event1.timestamp == event2.timestamp ? 0 : 1);
+            }
+        });
+        for (Event commit : commits) {
+            knownCommitIds.add(commit.id.substring(EVENT_ID_PREFIX.length()));
+        }
+    }
+
     private Event transformCommitToEvent(GithubCommitDTO githubCommitDTO) {
-        DateTime dateTime = ISODateTimeFormat.dateTimeNoMillis().parseDateTime(githubCommitDTO.committed_date);
-        return new Event(dateTime.getMillis(), githubCommitDTO.committer.name, githubCommitDTO.message, githubCommitDTO.committer.email);
+        return transformCommitToEvent(githubCommitDTO.id, githubCommitDTO.committed_date, githubCommitDTO.committer.name, githubCommitDTO.committer.email, githubCommitDTO.message);
     }
 
-    private GithubCommitsDTO getGitHubCommits(String url) {
-        ClientConfig clientConfig = new DefaultClientConfig();
-        clientConfig.getFeatures().put(COM_SUN_JERSEY_API_JSON_POJOMAPPING_FEATURE, true);
+    /**
+     * Also transform the commits pushed to <code>HooksResource</code>, so that they give the same events as when fetched.
+     */
+    static Event transformCommitToEvent(String id, String committedDate, String committerName, String committerEmail, String message) {
+        DateTime dateTime = ISODateTimeFormat.dateTimeNoMillis().parseDateTime(committedDate);
+        return new Event(getEventId(id), dateTime.getMillis(), committerName, message, committerEmail, EventLevel.UNDIFINED);
+    }
 
-        GithubCommitsDTO githubCommitsDTO = buildJerseyClient(clientConfig)
-                .resource(url).get(GithubCommitsDTO.class);
-        return githubCommitsDTO;
+    /**
+     * A commit is identified by its SHA, whatever the branch it is fetched from.
+     */
+    private static String getEventId(String id) {
+        return EVENT_ID_PREFIX + id;
     }
 
-    Client buildJerseyClient(ClientConfig clientConfig) {
-        return Client.create(clientConfig);
+    private ClientResponse getGitHubCommits(String url, CachedResponse cachedResponse) {
+        if (client == null) {
+            client = buildJerseyClient();
+        }
+
+        WebResource.Builder request = client.resource(url).getRequestBuilder();
+        if (cachedResponse != null && cachedResponse.etag != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, cachedResponse.etag);
+        }
+        if (cachedResponse != null && cachedResponse.lastModified != null) {
+            request.header(HttpHeaders.IF_MODIFIED_SINCE, cachedResponse.lastModified);
+        }
+        return request.get(ClientResponse.class);
     }
 
-    /*
-     * GitHub API
+    /**
+     * @return the shared client, replaced in tests by a client reading files
      */
+    Client buildJerseyClient() {
+        return HttpClients.getSharedClient();
+    }
+
+    static class CachedResponse {
+        final String etag;
+        final String lastModified;
+        final Set<Event> events;
 
-    private static class GithubCommitsDTO {
-        public List<GithubCommitDTO> commits;
+        CachedResponse(String etag, String lastModified, Set<Event> events) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.events = events;
+        }
     }
 
+    /*
+     * GitHub API
+     */
+
     private static class GithubParentCommit {
         public String id;
     }
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache the gravatar urls of the mail addresses, so that the md5 of an address is computed once
+ * rather than for each event of its author. A missing address has the url of the empty address.
+ * Reads take no lock, as every fetcher thread builds events: only the insertion of an address into a full cache
+ * locks, to evict the least recently used address.
+ */
+public class GravatarUrlCache {
+
+    static final int DEFAULT_MAX_SIZE = 1000;
+
+    private static final String GRAVATAR_URL = "http://www.gravatar.com/avatar/";
+    private static final String DEFAULT_IMAGE = "?d=mm";
+
+    private static final GravatarUrlCache SHARED = new GravatarUrlCache(DEFAULT_MAX_SIZE);
+
+    static {
+        Metrics.counter("devradar_gravatar_cache_hits_total", "Gravatar urls found in the cache", new Metrics.Value() {
+            @Override
+            public long get() {
+                return SHARED.getHits();
+            }
+        });
+        Metrics.counter("devradar_gravatar_cache_misses_total", "Gravatar urls computed", new Metrics.Value() {
+            @Override
+            public long get() {
+                return SHARED.getMisses();
+            }
+        });
+        Metrics.gauge("devradar_gravatar_cache_size", "Mail addresses in the gravatar url cache", new Metrics.Value() {
+            @Override
+            public long get() {
+                return SHARED.size();
+            }
+        });
+    }
+
+    private final int maxSize;
+
+    private final ConcurrentMap<String, CachedUrl> urls;
+
+    /*
+     * ticks at each read, to stamp the last use of the addresses
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final Object evictionLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @return the cache used by all the events
+     */
+    public static GravatarUrlCache getShared() {
+        return SHARED;
+    }
+
+    GravatarUrlCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.urls = new ConcurrentHashMap<String, CachedUrl>(Math.min(maxSize, DEFAULT_MAX_SIZE) * 4 / 3 + 1);
+    }
+
+    /**
+     * @param email the mail address, may be null
+     * @return the gravatar url of the address
+     */
+    public String getUrl(String email) {
+        if (email == null) {
+            email = "";
+        }
+        CachedUrl cachedUrl = urls.get(email);
+        if (cachedUrl != null) {
+            cachedUrl.lastUse = clock.incrementAndGet();
+            hits.incrementAndGet();
+            return cachedUrl.url;
+        }
+        misses.incrementAndGet();
+        // an address computed twice at once gives the same url, the first one is kept
+        cachedUrl = new CachedUrl(computeUrl(email), clock.incrementAndGet());
+        CachedUrl existingUrl = urls.putIfAbsent(email, cachedUrl);
+        if (existingUrl != null) {
+            return existingUrl.url;
+        }
+        if (urls.size() > maxSize) {
+            evict();
+        }
+        return cachedUrl.url;
+    }
+
+    /*
+     * remove the least recently used addresses until the cache is not over its size, scanning it for each
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            while (urls.size() > maxSize) {
+                Map.Entry<String, CachedUrl> leastRecentlyUsed = null;
+                for (Map.Entry<String, CachedUrl> entry : urls.entrySet()) {
+                    if (leastRecentlyUsed == null || entry.getValue().lastUse < leastRecentlyUsed.getValue().lastUse) {
+                        leastRecentlyUsed = entry;
+                    }
+                }
+                if (leastRecentlyUsed == null) {
+                    return;
+                }
+                urls.remove(leastRecentlyUsed.getKey(), leastRecentlyUsed.getValue());
+            }
+        }
+    }
+
+    private String computeUrl(String email) {
+        StringBuilder builder = new StringBuilder(GRAVATAR_URL);
+
+        builder.append(DigestUtils.md5Hex(email));
+        builder.append(DEFAULT_IMAGE);
+        return builder.toString();
+    }
+
+    public int size() {
+        return urls.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static class CachedUrl {
+
+        final String url;
+
+        volatile long lastUse;
+
+        CachedUrl(String url, long lastUse) {
+            this.url = url;
+            this.lastUse = lastUse;
+        }
+    }
+}
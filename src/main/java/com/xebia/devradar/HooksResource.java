@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.apache.commons.codec.binary.Hex;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.ServletContext;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * JAX-RS Root Resource receiving the changes of the sources as soon as they happen, polling being only a fallback.
+ * <ul>
+ * <li>the commits of a GitHub push are ingested as is by the workspaces fetching the branch</li>
+ * <li>a Hudson notification, which does not tell the users of the build, makes the workspaces fetching the job
+ * fetch it now, even if it was fetched for other workspaces less than a poll interval ago</li>
+ * </ul>
+ * Only the workspaces already registered are notified, of the sources whose url is the one of the pushed branch
+ * or of the built job.
+ * <p/>
+ * The hooks are refused unless they are authenticated: a GitHub push must be signed with the secret of the hook,
+ * a Hudson notification must hold the token of the hook in its url. Without a secret or a token, the hook is off.
+ */
+@Path("/hooks")
+public class HooksResource {
+
+    private static final Logger LOGGER = Logger.getLogger(HooksResource.class.getName());
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String BRANCH_REF_PREFIX = "refs/heads/";
+
+    private static final String SIGNATURE_PREFIX = "sha1=";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA1";
+
+    private static final String PAYLOAD_PARAM = "payload=";
+
+    @Context
+    ServletContext servletContext;
+
+    /**
+     * GitHub posts the payload of its post-receive hooks as a form parameter. The signature is the one of the whole
+     * form, so the form is read as is.
+     */
+    @POST
+    @Path("github")
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    public Response pushFromGitHubForm(@HeaderParam("X-Hub-Signature") String signature, byte[] form) {
+        checkGitHubSignature(signature, form);
+        return pushFromGitHub(readFormPayload(form));
+    }
+
+    @POST
+    @Path("github")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response pushFromGitHub(@HeaderParam("X-Hub-Signature") String signature, byte[] payload) {
+        checkGitHubSignature(signature, payload);
+        return pushFromGitHub(toString(payload));
+    }
+
+    private Response pushFromGitHub(String payload) {
+        JsonNode push = readPayload(payload);
+        JsonNode repository = push.path("repository");
+        String owner = repository.path("owner").path("name").getTextValue();
+        String repositoryName = repository.path("name").getTextValue();
+        String ref = push.path("ref").getTextValue();
+        if (owner == null || repositoryName == null || ref == null) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+        if (!ref.startsWith(BRANCH_REF_PREFIX)) {
+            // tags give no event
+            return Response.noContent().build();
+        }
+        String branch = ref.substring(BRANCH_REF_PREFIX.length());
+        WorkspaceRegistry workspaceRegistry = getWorkspaceRegistry();
+        String branchUrl = SourceRegistry.canonicalUrl(workspaceRegistry.getSources().getGitHubBranchUrl(owner, repositoryName, branch));
+
+        Set<Event> events = new HashSet<Event>();
+        for (JsonNode commit : push.path("commits")) {
+            JsonNode committer = commit.path("committer").isMissingNode() ? commit.path("author") : commit.path("committer");
+            String id = commit.path("id").getTextValue();
+            String timestamp = commit.path("timestamp").getTextValue();
+            if (id == null || timestamp == null) {
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
+            }
+            try {
+                events.add(GitHubFetcher.transformCommitToEvent(id, timestamp, committer.path("name").getTextValue(),
+                        committer.path("email").getTextValue(), commit.path("message").getTextValue()));
+            } catch (IllegalArgumentException e) {
+                throw new WebApplicationException(e, Response.Status.BAD_REQUEST);
+            }
+        }
+
+        int notifiedWorkspaces = 0;
+        for (Workspace workspace : workspaceRegistry.getWorkspaces()) {
+            for (Pollable source : workspace.getFetchers()) {
+                if (branchUrl.equals(SourceRegistry.canonicalUrl(source.getUrl()))) {
+                    workspace.push(source, events);
+                    notifiedWorkspaces++;
+                }
+            }
+        }
+        LOGGER.fine("Pushed " + events.size() + " commits of " + branchUrl + " to " + notifiedWorkspaces + " workspaces");
+        return Response.noContent().build();
+    }
+
+    /**
+     * Receive the notifications of the Hudson Notification plugin, in json over http, the token of the hook being
+     * a parameter of the url set in the plugin.
+     */
+    @POST
+    @Path("hudson")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response notifyFromHudson(@QueryParam("token") String token, String payload) {
+        String hookToken = getParameter(DevRadarContextListener.HUDSON_HOOK_TOKEN_PARAM);
+        if (hookToken == null || token == null || !MessageDigest.isEqual(getBytes(hookToken), getBytes(token))) {
+            LOGGER.warning("Refused a Hudson notification without the token of the hook");
+            throw new WebApplicationException(Response.Status.FORBIDDEN);
+        }
+        JsonNode notification = readPayload(payload);
+        String phase = notification.path("build").path("phase").getTextValue();
+        String buildUrl = notification.path("build").path("full_url").getTextValue();
+        if (phase == null || buildUrl == null) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+        if ("STARTED".equals(phase)) {
+            // builds in progress give no event
+            return Response.noContent().build();
+        }
+
+        PollScheduler pollScheduler = (PollScheduler) servletContext.getAttribute(DevRadarContextListener.POLL_SCHEDULER_ATTRIBUTE);
+        WorkspaceRegistry workspaceRegistry = getWorkspaceRegistry();
+        String jobUrl = getJobUrl(buildUrl);
+        Map<Workspace, List<Pollable>> notifiedSources = new LinkedHashMap<Workspace, List<Pollable>>();
+        for (Workspace workspace : workspaceRegistry.getWorkspaces()) {
+            List<Pollable> sources = new ArrayList<Pollable>();
+            for (Pollable source : workspace.getFetchers()) {
+                if (jobUrl.equals(SourceRegistry.canonicalUrl(source.getUrl()))) {
+                    // the first of the workspaces to poll fetches the job for all of them
+                    workspaceRegistry.getSourceRegistry().expire(source.getUrl());
+                    sources.add(source);
+                }
+            }
+            if (!sources.isEmpty()) {
+                notifiedSources.put(workspace, sources);
+            }
+        }
+        if (!notifiedSources.isEmpty()) {
+            pollScheduler.pollNow(notifiedSources);
+        }
+        return Response.status(Response.Status.ACCEPTED).build();
+    }
+
+    /**
+     * @return the url of the job of a build, the one of the build without its number
+     */
+    private String getJobUrl(String buildUrl) {
+        String jobUrl = SourceRegistry.canonicalUrl(buildUrl);
+        int lastSlash = jobUrl.lastIndexOf('/');
+        if (lastSlash < 0) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+        return jobUrl.substring(0, lastSlash);
+    }
+
+    private void checkGitHubSignature(String signature, byte[] body) {
+        String secret = getParameter(DevRadarContextListener.GITHUB_HOOK_SECRET_PARAM);
+        if (secret == null || signature == null || body == null
+                || !MessageDigest.isEqual(getBytes(SIGNATURE_PREFIX + sign(secret, body)), getBytes(signature))) {
+            LOGGER.warning("Refused a GitHub push without the signature of the hook");
+            throw new WebApplicationException(Response.Status.FORBIDDEN);
+        }
+    }
+
+    /**
+     * @return the hex HMAC-SHA1 of the body, keyed with the secret of the hook as GitHub does
+     */
+    static String sign(String secret, byte[] body) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(getBytes(secret), HMAC_ALGORITHM));
+            return new String(Hex.encodeHex(mac.doFinal(body)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String readFormPayload(byte[] form) {
+        for (String param : toString(form).split("&")) {
+            if (param.startsWith(PAYLOAD_PARAM)) {
+                try {
+                    return URLDecoder.decode(param.substring(PAYLOAD_PARAM.length()), "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                } catch (IllegalArgumentException e) {
+                    throw new WebApplicationException(e, Response.Status.BAD_REQUEST);
+                }
+            }
+        }
+        throw new WebApplicationException(Response.Status.BAD_REQUEST);
+    }
+
+    private String getParameter(String name) {
+        String value = servletContext.getInitParameter(name);
+        return value == null || value.trim().length() == 0 ? null : value.trim();
+    }
+
+    private static byte[] getBytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toString(byte[] body) {
+        if (body == null) {
+            return null;
+        }
+        try {
+            return new String(body, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private JsonNode readPayload(String payload) {
+        if (payload == null) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+        try {
+            return OBJECT_MAPPER.readTree(new StringReader(payload));
+        } catch (IOException e) {
+            throw new WebApplicationException(e, Response.Status.BAD_REQUEST);
+        }
+    }
+
+    private WorkspaceRegistry getWorkspaceRegistry() {
+        return (WorkspaceRegistry) servletContext.getAttribute(DevRadarContextListener.WORKSPACE_REGISTRY_ATTRIBUTE);
+    }
+}
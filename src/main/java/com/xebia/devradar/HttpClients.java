@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.filter.GZIPContentEncodingFilter;
+import com.sun.jersey.client.apache.ApacheHttpClient;
+import com.sun.jersey.client.apache.ApacheHttpClientHandler;
+import com.sun.jersey.client.apache.config.DefaultApacheHttpClientConfig;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Jersey client shared by all the fetchers. It is thread safe and keeps its connections alive
+ * in a pool, so that polls do not pay the setup of a client nor of a TCP/TLS connection.
+ * Responses are requested gzipped.
+ */
+public final class HttpClients {
+
+    static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+
+    static final int DEFAULT_MAX_CONNECTIONS = 64;
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(5);
+
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(20);
+
+    private static final String COM_SUN_JERSEY_API_JSON_POJOMAPPING_FEATURE = "com.sun.jersey.api.json.POJOMappingFeature";
+
+    private static ApacheHttpClient sharedClient;
+
+    private HttpClients() {
+    }
+
+    /**
+     * @return the shared client, created with default settings if it was not configured
+     */
+    public static synchronized Client getSharedClient() {
+        if (sharedClient == null) {
+            sharedClient = create(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+        }
+        return sharedClient;
+    }
+
+    /**
+     * Replace the shared client by a client with these settings.
+     */
+    public static synchronized void configure(int maxConnectionsPerHost, int maxConnections, int connectTimeoutMillis, int readTimeoutMillis) {
+        shutdown();
+        sharedClient = create(maxConnectionsPerHost, maxConnections, connectTimeoutMillis, readTimeoutMillis);
+    }
+
+    /**
+     * Close the pooled connections of the shared client.
+     */
+    public static synchronized void shutdown() {
+        if (sharedClient != null) {
+            ((MultiThreadedHttpConnectionManager) sharedClient.getClientHandler().getHttpClient().getHttpConnectionManager()).shutdown();
+            sharedClient = null;
+        }
+    }
+
+    static ApacheHttpClient create(int maxConnectionsPerHost, int maxConnections, int connectTimeoutMillis, int readTimeoutMillis) {
+        MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+        params.setMaxTotalConnections(maxConnections);
+        params.setConnectionTimeout(connectTimeoutMillis);
+        params.setSoTimeout(readTimeoutMillis);
+
+        ClientConfig clientConfig = new DefaultApacheHttpClientConfig();
+        clientConfig.getFeatures().put(COM_SUN_JERSEY_API_JSON_POJOMAPPING_FEATURE, true);
+
+        ApacheHttpClient client = new ApacheHttpClient(new ApacheHttpClientHandler(new HttpClient(connectionManager)), clientConfig);
+        // the filter added first is the nearest to the connection: bytes are counted before they are inflated
+        client.addFilter(new HttpMetricsFilter());
+        // ask for gzipped responses and inflate them, without compressing the requests
+        client.addFilter(new GZIPContentEncodingFilter(false));
+        return client;
+    }
+}
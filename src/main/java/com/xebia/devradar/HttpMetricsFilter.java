@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Count the requests of the shared client, their failures and the bytes of their responses as received,
+ * before they are inflated, and measure the time to get the response headers. Metrics are labelled by host.
+ */
+class HttpMetricsFilter extends ClientFilter {
+
+    static final String REQUESTS_METRIC = "devradar_http_requests_total";
+
+    static final String FAILURES_METRIC = "devradar_http_failures_total";
+
+    static final String RESPONSE_BYTES_METRIC = "devradar_http_response_bytes_total";
+
+    static final String REQUEST_SECONDS_METRIC = "devradar_http_request_seconds";
+
+    private final ConcurrentMap<String, HostMetrics> hostMetrics = new ConcurrentHashMap<String, HostMetrics>();
+
+    @Override
+    public ClientResponse handle(ClientRequest cr) throws ClientHandlerException {
+        HostMetrics metrics = getHostMetrics(String.valueOf(cr.getURI().getHost()));
+        metrics.requests.increment();
+        long start = System.nanoTime();
+        ClientResponse response;
+        try {
+            response = getNext().handle(cr);
+        } catch (ClientHandlerException e) {
+            metrics.failures.increment();
+            throw e;
+        } finally {
+            metrics.requestSeconds.observeSince(start);
+        }
+        if (response.getStatus() >= 400) {
+            metrics.failures.increment();
+        }
+        if (response.hasEntity()) {
+            response.setEntityInputStream(new CountingInputStream(response.getEntityInputStream(), metrics.responseBytes));
+        }
+        return response;
+    }
+
+    private HostMetrics getHostMetrics(String host) {
+        HostMetrics metrics = hostMetrics.get(host);
+        if (metrics == null) {
+            metrics = new HostMetrics(host);
+            HostMetrics existingMetrics = hostMetrics.putIfAbsent(host, metrics);
+            if (existingMetrics != null) {
+                metrics = existingMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * The metrics of a host, looked up once.
+     */
+    private static class HostMetrics {
+
+        final Metrics.Counter requests;
+
+        final Metrics.Counter failures;
+
+        final Metrics.Counter responseBytes;
+
+        final Metrics.Histogram requestSeconds;
+
+        HostMetrics(String host) {
+            this.requests = Metrics.counter(REQUESTS_METRIC, "Requests sent to the sources", "host", host);
+            this.failures = Metrics.counter(FAILURES_METRIC, "Requests without response or with an error status", "host", host);
+            this.responseBytes = Metrics.counter(RESPONSE_BYTES_METRIC, "Bytes received from the sources", "host", host);
+            this.requestSeconds = Metrics.histogram(REQUEST_SECONDS_METRIC, "Time to get the response headers of a source", "host", host);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final Metrics.Counter bytes;
+
+        CountingInputStream(InputStream in, Metrics.Counter bytes) {
+            super(in);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                bytes.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                bytes.add(read);
+            }
+            return read;
+        }
+    }
+}
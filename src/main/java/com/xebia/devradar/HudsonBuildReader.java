@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Read the builds of a Hudson json stream one at a time, at the token level, instead of binding the whole
+ * build tree: memory does not depend on the number of builds. Only the fields used to build events are kept,
+ * and nothing but the number is kept for a build still building: the fields which come after
+ * <code>building</code> are skipped without being read, hence <code>building</code> comes first in the requested tree.
+ *
+ * The same <code>Build</code> instance is returned by each call to <code>next()</code>.
+ */
+class HudsonBuildReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JsonParser parser;
+
+    private final Build build = new Build();
+
+    private boolean singleBuild;
+
+    private boolean done;
+
+    private HudsonBuildReader(InputStream inputStream) {
+        try {
+            this.parser = JSON_FACTORY.createJsonParser(inputStream);
+        } catch (IOException e) {
+            closeQuietly(inputStream);
+            throw new ClientHandlerException("Cannot read hudson builds", e);
+        }
+    }
+
+    /**
+     * @param inputStream a job stream: <code>{"builds":[{...},{...}]}</code>
+     */
+    static HudsonBuildReader readBuilds(InputStream inputStream) {
+        HudsonBuildReader reader = new HudsonBuildReader(inputStream);
+        try {
+            reader.startObject();
+            reader.done = !reader.moveToBuilds();
+            return reader;
+        } catch (IOException e) {
+            reader.close();
+            throw new ClientHandlerException("Cannot read hudson builds", e);
+        }
+    }
+
+    /**
+     * @param inputStream a build stream: <code>{...}</code>
+     */
+    static HudsonBuildReader readBuild(InputStream inputStream) {
+        HudsonBuildReader reader = new HudsonBuildReader(inputStream);
+        try {
+            reader.startObject();
+            reader.singleBuild = true;
+            return reader;
+        } catch (IOException e) {
+            reader.close();
+            throw new ClientHandlerException("Cannot read hudson build", e);
+        }
+    }
+
+    /**
+     * @return the next build, or null if there is no more build
+     */
+    Build next() {
+        if (done) {
+            return null;
+        }
+        try {
+            if (singleBuild) {
+                done = true;
+            } else if (parser.nextToken() != JsonToken.START_OBJECT) {
+                done = true;
+                return null;
+            }
+            readBuild();
+            return build;
+        } catch (IOException e) {
+            throw new ClientHandlerException("Cannot read hudson builds", e);
+        }
+    }
+
+    void close() {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            // nothing more to read
+        }
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            // nothing more to read
+        }
+    }
+
+    private void startObject() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new ClientHandlerException("A json object is expected from hudson");
+        }
+    }
+
+    private boolean moveToBuilds() throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY && "builds".equals(fieldName)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private void readBuild() throws IOException {
+        build.clear();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("number".equals(fieldName)) {
+                build.number = value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+            } else if ("building".equals(fieldName)) {
+                build.building = value == JsonToken.VALUE_TRUE;
+                if (build.building) {
+                    build.userNames.clear();
+                }
+            } else if (build.building) {
+                parser.skipChildren();
+            } else if ("result".equals(fieldName)) {
+                build.result = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+            } else if ("timestamp".equals(fieldName)) {
+                build.timestamp = value == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : null;
+            } else if ("culprits".equals(fieldName)) {
+                // commiter usernames
+                readUserNames(value, "fullName");
+            } else if ("actions".equals(fieldName)) {
+                readActions(value);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readActions(JsonToken actions) throws IOException {
+        if (actions != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        for (JsonToken action = parser.nextToken(); action != JsonToken.END_ARRAY; action = parser.nextToken()) {
+            if (action != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("causes".equals(fieldName)) {
+                    // gui usernames
+                    readUserNames(value, "userName");
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the users of an array of objects, named by the <code>userNameField</code> of each object.
+     */
+    private void readUserNames(JsonToken users, String userNameField) throws IOException {
+        if (users != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        for (JsonToken user = parser.nextToken(); user != JsonToken.END_ARRAY; user = parser.nextToken()) {
+            if (user != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (userNameField.equals(fieldName) && value == JsonToken.VALUE_STRING && StringUtils.isNotBlank(parser.getText())) {
+                    build.userNames.add(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    static class Build {
+        Integer number;
+        boolean building;
+        String result;
+        Long timestamp;
+        final Set<String> userNames = new LinkedHashSet<String>();
+
+        private void clear() {
+            number = null;
+            building = false;
+            result = null;
+            timestamp = null;
+            userNames.clear();
+        }
+    }
+}
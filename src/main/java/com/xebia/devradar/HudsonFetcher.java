@@ -20,39 +20,64 @@ package com.xebia.devradar;
 
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientHandlerException;
-import com.sun.jersey.api.client.ClientRequest;
 import com.sun.jersey.api.client.ClientResponse;
-import com.sun.jersey.api.client.config.ClientConfig;
-import com.sun.jersey.api.client.config.DefaultClientConfig;
-import com.sun.jersey.api.client.filter.ClientFilter;
-import org.apache.commons.lang.StringUtils;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import org.codehaus.jackson.map.ObjectMapper;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLEncoder;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 /**
  *  Fetch a list of commit from github and transform each of them into <code>com.xebia.devradar.Event</code>
  */
-public class HudsonFetcher implements Pollable {
+public class HudsonFetcher implements ResumablePollable {
 
-    private static final String COM_SUN_JERSEY_API_JSON_POJOMAPPING_FEATURE = "com.sun.jersey.api.json.POJOMappingFeature";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /*
+     * building first, so that the reader can skip the rest of a build still building when Hudson keeps this order
+     */
+    private static final String BUILD_TREE = "building,number,result,timestamp,actions[causes[userName]],culprits[fullName,absoluteUrl]";
+
+    private static final String BUILDS_TREE = "builds[" + BUILD_TREE + "]";
+
+    /**
+     * number of builds requested at once when looking for the builds newer than the last completed one
+     */
+    static final int PAGE_SIZE = 10;
 
     private String hudsonUrl;
 
     private String jobName;
 
+    private final String jobUrl;
+
     // default for test
     String url;
 
     private Client client;
 
+    /*
+     * once known, only the builds newer than the last completed one and the builds still building are requested
+     */
+    // default for test
+    Integer lastCompletedNumber;
+
+    // default for test
+    Set<Integer> buildingNumbers = new HashSet<Integer>();
+
+    // default for test
+    HudsonUserCache userCache;
+
     private static final String ANONYMOUS_USER = "anonymous";
 
     private static final String BUILD_FAILURE = "FAILURE";
@@ -61,113 +86,183 @@ public class HudsonFetcher implements Pollable {
 
     private static final String BUILD_SUCCESS = "SUCCESS";
 
+    private static final Metrics.Histogram USER_FETCH_SECONDS = Metrics.histogram("devradar_hudson_user_fetch_seconds", "Time to fetch the mail of a Hudson user missing from the cache");
+
 
     public HudsonFetcher(String hudsonUrl, String jobName) {
         this.hudsonUrl = hudsonUrl;
         this.jobName = jobName;
-        url = hudsonUrl + "/job/" + jobName + "/api/json?tree=builds[actions[causes[userName]],result,culprits[fullName,absoluteUrl],timestamp,building]";
-
-        ClientConfig clientConfig = new DefaultClientConfig();
-        clientConfig.getFeatures().put(COM_SUN_JERSEY_API_JSON_POJOMAPPING_FEATURE, true);
-        clientConfig.getClasses();
-
-        client = buildJerseyClient(clientConfig);
-        client.addFilter(getClientFilterSettingJsonContentType());
-    }
-
-    Client buildJerseyClient(ClientConfig clientConfig) {
-        return Client.create(clientConfig);
+        this.userCache = HudsonUserCache.forHudson(hudsonUrl);
+        jobUrl = hudsonUrl + "/job/" + jobName;
+        url = jobUrl + "/api/json";
+        client = buildJerseyClient();
     }
 
     /**
-     * Hudson use the Content-Type : application/javascript which is not
-     * accepted by jersey as json deserializer. So, this filter will
-     * replace the existing content-type by "application/json;charset=UTF-8"
-     *
-     * @return client filter setting json content type
+     * @return the shared client, replaced in tests by a client reading files
      */
-    private ClientFilter getClientFilterSettingJsonContentType() {
-        ClientFilter clientFilter = new ClientFilter() {
-            @Override
-            public ClientResponse handle(ClientRequest cr) throws ClientHandlerException {
-                ClientResponse clientResponse = getNext().handle(cr);
-                clientResponse.getHeaders().remove("Content-Type");
-                clientResponse.getHeaders().add("Content-Type", "application/json;charset=UTF-8");
-                return clientResponse;
-            }
-        };
-        return clientFilter;
+    Client buildJerseyClient() {
+        return HttpClients.getSharedClient();
     }
 
-
     /**
      * Fetch a set of events from a hudson job specified by an url.
+     * The first fetch reads all the builds of the job, the next ones only the builds completed since.
+     * Builds are streamed one at a time and transformed as soon as they are read.
+     * The last completed build is remembered only once the fetch succeeds, so that a failed fetch is done again.
      * @return A set of <code>com.xebia.devradar.Event</code>
      */
     @Override
-    public Set<Event> fetch() {
-        HudsonBuildsDTO hudsonBuildsDTO = getHudsonBuilds();
+    public synchronized Set<Event> fetch() {
         Set<Event> events = new HashSet<Event>();
-        for (HudsonBuildDTO hudsonBuildDTO : hudsonBuildsDTO.builds) {
-            if (isValidBuild(hudsonBuildDTO)) {
-                events.addAll(transformBuildToEvents(hudsonBuildDTO));
+        BuildCursor cursor = new BuildCursor(lastCompletedNumber, buildingNumbers);
+        if (lastCompletedNumber == null) {
+            transformAllBuilds(events, cursor);
+        } else {
+            Set<Integer> recheckedNumbers = new HashSet<Integer>(buildingNumbers);
+            transformNewBuilds(events, recheckedNumbers, cursor);
+            for (Integer number : recheckedNumbers) {
+                HudsonBuildReader reader = getHudsonBuild(number);
+                if (reader == null) {
+                    cursor.buildingNumbers.remove(number);
+                    continue;
+                }
+                try {
+                    HudsonBuildReader.Build build = reader.next();
+                    if (build != null) {
+                        transformBuild(build, events, cursor);
+                    }
+                } finally {
+                    reader.close();
+                }
             }
         }
+        lastCompletedNumber = cursor.lastCompletedNumber;
+        buildingNumbers = cursor.buildingNumbers;
         return events;
     }
 
+    @Override
+    public String getUrl() {
+        return jobUrl;
+    }
+
+    /**
+     * Resume after the last build of the job in the events: only the builds completed since are fetched.
+     * The builds missing between the last ones may have been building, they are requested again.
+     */
+    @Override
+    public synchronized void resume(Collection<Event> events) {
+        if (lastCompletedNumber != null) {
+            return;
+        }
+        String idPrefix = getEventIdPrefix();
+        Set<Integer> numbers = new HashSet<Integer>();
+        for (Event event : events) {
+            int end = event.id == null || !event.id.startsWith(idPrefix) ? -1 : event.id.indexOf('@', idPrefix.length());
+            if (end < 0) {
+                continue;
+            }
+            try {
+                numbers.add(Integer.valueOf(event.id.substring(idPrefix.length(), end)));
+            } catch (NumberFormatException e) {
+                // a build without number, identified by its timestamp
+            }
+        }
+        if (numbers.isEmpty()) {
+            return;
+        }
+        int lastNumber = Collections.max(numbers);
+        int firstNumber = Math.max(Collections.min(numbers), lastNumber - PAGE_SIZE + 1);
+        for (int number = firstNumber; number < lastNumber; number++) {
+            if (!numbers.contains(number)) {
+                buildingNumbers.add(number);
+            }
+        }
+        lastCompletedNumber = lastNumber;
+    }
+
     /*
      * Transform Builds to Events
      */
 
-    private boolean isValidBuild(HudsonBuildDTO hudsonBuildDTO) {
-        return (hudsonBuildDTO.building == false);
-    }
-
-    private Set<Event> transformBuildToEvents(HudsonBuildDTO hudsonBuildDTO) {
-        Set<Event> events = new HashSet<Event>();
-        Set<String> userNames = getUserNames(hudsonBuildDTO);
-        if (userNames.size() == 0) {
-            events.add(transformBuildToEvent(hudsonBuildDTO));
+    private void transformAllBuilds(Set<Event> events, BuildCursor cursor) {
+        boolean numbered = true;
+        HudsonBuildReader reader = getHudsonBuilds(BUILDS_TREE);
+        try {
+            for (HudsonBuildReader.Build build = reader.next(); build != null; build = reader.next()) {
+                numbered &= build.number != null;
+                transformBuild(build, events, cursor);
+            }
+        } finally {
+            reader.close();
         }
-        for (String userName : userNames) {
-            events.add(transformBuildToEvent(hudsonBuildDTO, userName));
+        if (!numbered) {
+            // without build numbers, builds cannot be requested incrementally
+            cursor.lastCompletedNumber = null;
         }
-        return events;
     }
 
-    private Set<String> getUserNames(HudsonBuildDTO hudsonBuildDTO) {
-        Set<String> userNames = new HashSet<String>();
-
-        // commiter usernames
-        if (hudsonBuildDTO.culprits != null) {
-            for (HudsonUserDTO hudsonUserDTO : hudsonBuildDTO.culprits) {
-                if (StringUtils.isNotBlank(hudsonUserDTO.fullName)) {
-                    userNames.add(hudsonUserDTO.fullName);
+    /**
+     * Request the builds page by page, newest first, until the last completed build is reached.
+     */
+    private void transformNewBuilds(Set<Event> events, Set<Integer> recheckedNumbers, BuildCursor cursor) {
+        int knownNumber = lastCompletedNumber;
+        for (int from = 0; ; from += PAGE_SIZE) {
+            int pageSize = 0;
+            HudsonBuildReader reader = getHudsonBuilds(BUILDS_TREE + "{" + from + "," + (from + PAGE_SIZE) + "}");
+            try {
+                for (HudsonBuildReader.Build build = reader.next(); build != null; build = reader.next()) {
+                    if (build.number == null || build.number <= knownNumber) {
+                        return;
+                    }
+                    recheckedNumbers.remove(build.number);
+                    transformBuild(build, events, cursor);
+                    pageSize++;
                 }
+            } finally {
+                reader.close();
+            }
+            if (pageSize < PAGE_SIZE) {
+                return;
             }
         }
+    }
 
-        // gui usernames
-        if (hudsonBuildDTO.actions != null) {
-            for (HudsonActionDTO hudsonActionDTO : hudsonBuildDTO.actions) {
-                if (hudsonActionDTO.causes != null) {
-                    for (HudsonCauseDTO hudsonCauseDTO : hudsonActionDTO.causes) {
-                        if (StringUtils.isNotBlank(hudsonCauseDTO.userName)) {
-                            userNames.add(hudsonCauseDTO.userName);
-                        }
-                    }
+    private void transformBuild(HudsonBuildReader.Build build, Set<Event> events, BuildCursor cursor) {
+        if (build.number != null) {
+            if (build.building) {
+                cursor.buildingNumbers.add(build.number);
+            } else {
+                cursor.buildingNumbers.remove(build.number);
+                if (cursor.lastCompletedNumber == null || build.number > cursor.lastCompletedNumber) {
+                    cursor.lastCompletedNumber = build.number;
                 }
             }
         }
-        return userNames;
+        if (isValidBuild(build)) {
+            transformBuildToEvents(build, events);
+        }
+    }
+
+    private boolean isValidBuild(HudsonBuildReader.Build build) {
+        return (build.building == false);
     }
 
-    private Event transformBuildToEvent(HudsonBuildDTO hudsonBuildDTO) {
-        return transformBuildToEvent(hudsonBuildDTO, null);
+    private void transformBuildToEvents(HudsonBuildReader.Build build, Set<Event> events) {
+        if (build.userNames.size() == 0) {
+            events.add(transformBuildToEvent(build));
+        }
+        for (String userName : build.userNames) {
+            events.add(transformBuildToEvent(build, userName));
+        }
     }
 
-    private Event transformBuildToEvent(HudsonBuildDTO hudsonBuildDTO, String userName) {
+    private Event transformBuildToEvent(HudsonBuildReader.Build build) {
+        return transformBuildToEvent(build, null);
+    }
+
+    private Event transformBuildToEvent(HudsonBuildReader.Build build, String userName) {
         String author = ANONYMOUS_USER;
         String usermail = null;
         EventLevel eventLevel = EventLevel.UNDIFINED;
@@ -177,15 +272,28 @@ public class HudsonFetcher implements Pollable {
             usermail = getUserMail(userName);
         }
 
-        if (BUILD_FAILURE.equals(hudsonBuildDTO.result)) {
+        if (BUILD_FAILURE.equals(build.result)) {
             eventLevel = EventLevel.ERROR;
-        } else if (BUILD_UNSTABLE.equals(hudsonBuildDTO.result)) {
+        } else if (BUILD_UNSTABLE.equals(build.result)) {
             eventLevel = EventLevel.WARNING;
-        } else if (BUILD_SUCCESS.equals(hudsonBuildDTO.result)) {
+        } else if (BUILD_SUCCESS.equals(build.result)) {
             eventLevel = EventLevel.INFO;
         }
 
-        return new Event(hudsonBuildDTO.timestamp, author, "Build " + hudsonBuildDTO.result, usermail, eventLevel);
+        return new Event(getEventId(build, author), build.timestamp, author, "Build " + build.result, usermail, eventLevel);
+    }
+
+    /**
+     * A build gives one event per user, identified by the job, the build and the user.
+     * The timestamp of the build is used when Hudson does not give its number.
+     */
+    private String getEventId(HudsonBuildReader.Build build, String author) {
+        Object buildId = build.number != null ? build.number : build.timestamp;
+        return getEventIdPrefix() + buildId + "@" + author;
+    }
+
+    private String getEventIdPrefix() {
+        return "hudson:" + getUrl() + "#";
     }
 
     /*
@@ -193,12 +301,24 @@ public class HudsonFetcher implements Pollable {
      */
 
     /**
-     * get another rest ressource to get the email of a user
+     * get another rest ressource to get the email of a user, unless it is cached
      *
      * @param userName
      * @return
      */
     private String getUserMail(String userName) {
+        HudsonUserCache.CachedUser cachedUser = userCache.get(userName);
+        if (cachedUser != null) {
+            return cachedUser.mail;
+        }
+        long start = System.nanoTime();
+        String mail = fetchUserMail(userName);
+        USER_FETCH_SECONDS.observeSince(start);
+        userCache.put(userName, mail);
+        return mail;
+    }
+
+    private String fetchUserMail(String userName) {
         String profilUrl = null;
         try {
             profilUrl = hudsonUrl + "/user/" + URLEncoder.encode(userName, "utf-8").replaceAll("\\+", "%20") + "/api/json";
@@ -206,49 +326,56 @@ public class HudsonFetcher implements Pollable {
             throw new IllegalStateException("utf-8 is not supported", e);
         }
 
-        HudsonUserDetailDTO hudsonUserDetailDTO = client.resource(profilUrl).queryParam("tree", "property[address]").get(HudsonUserDetailDTO.class);
-        return hudsonUserDetailDTO.property.get(0).address;
+        ClientResponse response = client.resource(profilUrl).queryParam("tree", "property[address]").get(ClientResponse.class);
+        InputStream inputStream = getEntityInputStream(response);
+        try {
+            return OBJECT_MAPPER.readTree(inputStream).path("property").path(0).path("address").getTextValue();
+        } catch (IOException e) {
+            throw new ClientHandlerException("Cannot read hudson user " + userName, e);
+        } finally {
+            response.close();
+        }
     }
 
-    private HudsonBuildsDTO getHudsonBuilds() {
-        return client.resource(url).get(HudsonBuildsDTO.class);
+    private HudsonBuildReader getHudsonBuilds(String tree) {
+        ClientResponse response = client.resource(url).queryParam("tree", tree).get(ClientResponse.class);
+        return HudsonBuildReader.readBuilds(getEntityInputStream(response));
     }
 
-    /*
-     * Hudson API
+    /**
+     * @return a reader of the build, or null if it does not exist anymore
      */
-
-    private static class HudsonBuildsDTO {
-        public List<HudsonBuildDTO> builds;
-    }
-
-    private static class HudsonBuildDTO {
-        public boolean building;
-        public String result;
-        public Long timestamp;
-        public List<HudsonUserDTO> culprits;
-        public List<HudsonActionDTO> actions;
-
+    private HudsonBuildReader getHudsonBuild(Integer number) {
+        ClientResponse response = client.resource(getUrl() + "/" + number + "/api/json").queryParam("tree", BUILD_TREE).get(ClientResponse.class);
+        if (response.getStatus() == ClientResponse.Status.NOT_FOUND.getStatusCode()) {
+            response.close();
+            return null;
+        }
+        return HudsonBuildReader.readBuild(getEntityInputStream(response));
     }
 
-    private static class HudsonActionDTO {
-        public List<HudsonCauseDTO> causes;
+    private InputStream getEntityInputStream(ClientResponse response) {
+        if (response.getStatus() >= 300) {
+            // the exception buffers the entity of the response, which can be closed only then
+            UniformInterfaceException e = new UniformInterfaceException(response);
+            response.close();
+            throw e;
+        }
+        return response.getEntityInputStream();
     }
 
-    private static class HudsonCauseDTO {
-        public String userName;
-    }
+    /**
+     * The builds known after a fetch, moved as the builds are transformed.
+     */
+    private static class BuildCursor {
 
-    private static class HudsonUserDTO {
-        public String fullName;
-        public String absoluteUrl;
-    }
+        Integer lastCompletedNumber;
 
-    private static class HudsonUserDetailDTO {
-        public List<HudsonUserPropertyDTO> property;
-    }
+        final Set<Integer> buildingNumbers;
 
-    private static class HudsonUserPropertyDTO {
-        public String address;
+        BuildCursor(Integer lastCompletedNumber, Set<Integer> buildingNumbers) {
+            this.lastCompletedNumber = lastCompletedNumber;
+            this.buildingNumbers = new HashSet<Integer>(buildingNumbers);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache the mail addresses of the users of a Hudson, to avoid one request per user of each build on each poll.
+ * Users without address are cached too. The cache is shared by all the fetchers of the same Hudson.
+ */
+public class HudsonUserCache {
+
+    static final int DEFAULT_MAX_SIZE = 1000;
+
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final ConcurrentMap<String, HudsonUserCache> CACHES = new ConcurrentHashMap<String, HudsonUserCache>();
+
+    private final int maxSize;
+
+    private final long ttlMillis;
+
+    private final Map<String, CachedUser> users;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @return the cache of the users of the Hudson at this url
+     */
+    public static HudsonUserCache forHudson(String hudsonUrl) {
+        HudsonUserCache cache = CACHES.get(hudsonUrl);
+        if (cache == null) {
+            cache = new HudsonUserCache(DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS);
+            HudsonUserCache existingCache = CACHES.putIfAbsent(hudsonUrl, cache);
+            if (existingCache != null) {
+                cache = existingCache;
+            } else {
+                registerMetrics(hudsonUrl, cache);
+            }
+        }
+        return cache;
+    }
+
+    private static void registerMetrics(String hudsonUrl, final HudsonUserCache cache) {
+        Metrics.counter("devradar_hudson_user_cache_hits_total", "Hudson users found in the cache", "hudson", hudsonUrl, new Metrics.Value() {
+            @Override
+            public long get() {
+                return cache.getHits();
+            }
+        });
+        Metrics.counter("devradar_hudson_user_cache_misses_total", "Hudson users missing from the cache", "hudson", hudsonUrl, new Metrics.Value() {
+            @Override
+            public long get() {
+                return cache.getMisses();
+            }
+        });
+        Metrics.gauge("devradar_hudson_user_cache_size", "Users in the Hudson user cache", "hudson", hudsonUrl, new Metrics.Value() {
+            @Override
+            public long get() {
+                return cache.size();
+            }
+        });
+    }
+
+    HudsonUserCache(final int maxSize, long ttl, TimeUnit unit) {
+        this.maxSize = maxSize;
+        this.ttlMillis = unit.toMillis(ttl);
+        // least recently used users are evicted first
+        this.users = new LinkedHashMap<String, CachedUser>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+                return size() > HudsonUserCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached user, or null if the user is unknown or has expired
+     */
+    public CachedUser get(String userName) {
+        CachedUser cachedUser;
+        synchronized (users) {
+            cachedUser = users.get(userName);
+            if (cachedUser != null && cachedUser.expiration <= currentTimeMillis()) {
+                users.remove(userName);
+                cachedUser = null;
+            }
+        }
+        if (cachedUser == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return cachedUser;
+    }
+
+    /**
+     * @param mail the mail of the user, null if the user has no mail
+     */
+    public void put(String userName, String mail) {
+        CachedUser cachedUser = new CachedUser(mail, currentTimeMillis() + ttlMillis);
+        synchronized (users) {
+            users.put(userName, cachedUser);
+        }
+    }
+
+    public int size() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public static class CachedUser {
+
+        public final String mail;
+
+        final long expiration;
+
+        CachedUser(String mail, long expiration) {
+            this.mail = mail;
+            this.expiration = expiration;
+        }
+    }
+}
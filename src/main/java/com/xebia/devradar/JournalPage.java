@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.List;
+
+/**
+ * Events read from an <code>EventJournal</code>, oldest first, with the cursor to read the next ones.
+ * When the epoch is not the one of the previous page, the journal was created again and the page is read
+ * from its start: the events read before are to be read again.
+ */
+public class JournalPage {
+
+    public final String epoch;
+    public final long sequence;
+    public final String cursor;
+    public final List<Event> events;
+
+    public JournalPage(String epoch, long sequence, String cursor, List<Event> events) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.cursor = cursor;
+        this.events = events;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the application, written in the Prometheus text format.
+ *
+ * A metric is looked up once by its name and the value of its optional label, then kept by its user:
+ * recording a value only updates atomic longs, without lock nor allocation.
+ */
+public final class Metrics {
+
+    /**
+     * upper bounds of the histogram buckets, in seconds
+     */
+    static final double[] LATENCY_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    private static final String NO_LABEL = "";
+
+    /*
+     * sorted by name so that the metrics are always written in the same order
+     */
+    private static final ConcurrentMap<String, Family> FAMILIES = new ConcurrentSkipListMap<String, Family>();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name, String help) {
+        return counter(name, help, null, NO_LABEL);
+    }
+
+    public static Counter counter(String name, String help, String labelName, String labelValue) {
+        return (Counter) getFamily(name, help, "counter", labelName).get(labelValue);
+    }
+
+    public static Histogram histogram(String name, String help) {
+        return histogram(name, help, null, NO_LABEL);
+    }
+
+    public static Histogram histogram(String name, String help, String labelName, String labelValue) {
+        return (Histogram) getFamily(name, help, "histogram", labelName).get(labelValue);
+    }
+
+    /**
+     * Register a counter whose value is read from <code>value</code> when the metrics are written.
+     */
+    public static void counter(String name, String help, Value value) {
+        counter(name, help, null, NO_LABEL, value);
+    }
+
+    public static void counter(String name, String help, String labelName, String labelValue, Value value) {
+        getFamily(name, help, "counter", labelName).put(labelValue, new ValueMetric(value));
+    }
+
+    /**
+     * Register a gauge whose value is read from <code>value</code> when the metrics are written.
+     */
+    public static void gauge(String name, String help, Value value) {
+        gauge(name, help, null, NO_LABEL, value);
+    }
+
+    public static void gauge(String name, String help, String labelName, String labelValue, Value value) {
+        getFamily(name, help, "gauge", labelName).put(labelValue, new ValueMetric(value));
+    }
+
+    /**
+     * Write all the metrics in the Prometheus text format, version 0.0.4.
+     */
+    public static void write(Writer writer) throws IOException {
+        for (Family family : FAMILIES.values()) {
+            family.write(writer);
+        }
+    }
+
+    private static Family getFamily(String name, String help, String type, String labelName) {
+        Family family = FAMILIES.get(name);
+        if (family == null) {
+            family = new Family(name, help, type, labelName);
+            Family existingFamily = FAMILIES.putIfAbsent(name, family);
+            if (existingFamily != null) {
+                family = existingFamily;
+            }
+        }
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    /**
+     * Source of the value of a metric kept elsewhere, such as the hits of a cache.
+     */
+    public interface Value {
+        long get();
+    }
+
+    /**
+     * The metrics of the same name, one per value of their label.
+     */
+    private static class Family {
+
+        final String name;
+        final String help;
+        final String type;
+        final String labelName;
+        final ConcurrentMap<String, Metric> metrics = new ConcurrentSkipListMap<String, Metric>();
+
+        Family(String name, String help, String type, String labelName) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelName = labelName;
+        }
+
+        Metric get(String labelValue) {
+            Metric metric = metrics.get(labelValue);
+            if (metric == null) {
+                Metric newMetric = "histogram".equals(type) ? new Histogram(LATENCY_BUCKETS) : new Counter();
+                metric = metrics.putIfAbsent(labelValue, newMetric);
+                if (metric == null) {
+                    metric = newMetric;
+                }
+            }
+            return metric;
+        }
+
+        void put(String labelValue, Metric metric) {
+            metrics.put(labelValue, metric);
+        }
+
+        void write(Writer writer) throws IOException {
+            writer.write("# HELP " + name + " " + help + "\n");
+            writer.write("# TYPE " + name + " " + type + "\n");
+            for (Map.Entry<String, Metric> metric : metrics.entrySet()) {
+                String labels = labelName == null ? NO_LABEL : labelName + "=\"" + escape(metric.getKey()) + "\"";
+                metric.getValue().write(writer, name, labels);
+            }
+        }
+
+        private String escape(String labelValue) {
+            return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        }
+    }
+
+    private abstract static class Metric {
+
+        abstract void write(Writer writer, String name, String labels) throws IOException;
+
+        static void writeSample(Writer writer, String name, String labels, String value) throws IOException {
+            writer.write(name);
+            if (labels.length() > 0) {
+                writer.write("{" + labels + "}");
+            }
+            writer.write(" " + value + "\n");
+        }
+    }
+
+    public static class Counter extends Metric {
+
+        private final AtomicLong count = new AtomicLong();
+
+        public void increment() {
+            count.incrementAndGet();
+        }
+
+        public void add(long value) {
+            count.addAndGet(value);
+        }
+
+        public long get() {
+            return count.get();
+        }
+
+        @Override
+        void write(Writer writer, String name, String labels) throws IOException {
+            writeSample(writer, name, labels, Long.toString(count.get()));
+        }
+    }
+
+    /**
+     * Durations counted in fixed buckets, the last one for the durations above all the bounds.
+     */
+    public static class Histogram extends Metric {
+
+        private final double[] bounds;
+
+        private final long[] boundNanos;
+
+        private final AtomicLongArray counts;
+
+        private final AtomicLong sumNanos = new AtomicLong();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.boundNanos = new long[bounds.length];
+            for (int i = 0; i < bounds.length; i++) {
+                boundNanos[i] = (long) (bounds[i] * TimeUnit.SECONDS.toNanos(1));
+            }
+            this.counts = new AtomicLongArray(bounds.length + 1);
+        }
+
+        /**
+         * @param startNanos the <code>System.nanoTime()</code> at the start of the measured operation
+         */
+        public void observeSince(long startNanos) {
+            observe(System.nanoTime() - startNanos);
+        }
+
+        public void observe(long nanos) {
+            int bucket = 0;
+            while (bucket < boundNanos.length && nanos > boundNanos[bucket]) {
+                bucket++;
+            }
+            counts.incrementAndGet(bucket);
+            sumNanos.addAndGet(nanos);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        @Override
+        void write(Writer writer, String name, String labels) throws IOException {
+            String separator = labels.length() > 0 ? "," : NO_LABEL;
+            long cumulativeCount = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulativeCount += counts.get(i);
+                writeSample(writer, name + "_bucket", labels + separator + "le=\"" + bounds[i] + "\"", Long.toString(cumulativeCount));
+            }
+            cumulativeCount += counts.get(bounds.length);
+            writeSample(writer, name + "_bucket", labels + separator + "le=\"+Inf\"", Long.toString(cumulativeCount));
+            writeSample(writer, name + "_sum", labels, Double.toString(sumNanos.get() / (double) TimeUnit.SECONDS.toNanos(1)));
+            writeSample(writer, name + "_count", labels, Long.toString(cumulativeCount));
+        }
+    }
+
+    private static class ValueMetric extends Metric {
+
+        private final Value value;
+
+        ValueMetric(Value value) {
+            this.value = value;
+        }
+
+        @Override
+        void write(Writer writer, String name, String labels) throws IOException {
+            writeSample(writer, name, labels, Long.toString(value.get()));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * JAX-RS Resource exposing the metrics of the application to Prometheus.
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+    static final String PROMETHEUS_TEXT_FORMAT = "text/plain; version=0.0.4";
+
+    @GET
+    @Produces(PROMETHEUS_TEXT_FORMAT)
+    public String getMetrics() throws IOException {
+        StringWriter writer = new StringWriter();
+        Metrics.write(writer);
+        return writer.toString();
+    }
+}
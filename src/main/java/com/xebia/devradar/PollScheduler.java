@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Poll workspaces in background so that reading a workspace never waits for its sources.
+ */
+public class PollScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(PollScheduler.class.getName());
+
+    private final ScheduledExecutorService executor;
+
+    // default for test
+    Map<Workspace, ScheduledFuture<?>> scheduledPolls = new ConcurrentHashMap<Workspace, ScheduledFuture<?>>();
+
+    public PollScheduler(int poolSize) {
+        this.executor = Executors.newScheduledThreadPool(poolSize, new DaemonThreadFactory("devradar-poller"));
+    }
+
+    /**
+     * Poll the workspace now, then every <code>interval</code> after the end of the previous poll.
+     * A workspace already scheduled is rescheduled with the new interval.
+     */
+    public void schedule(final Workspace workspace, long interval, TimeUnit unit) {
+        ScheduledFuture<?> scheduledPoll = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    workspace.poll();
+                } catch (RuntimeException e) {
+                    // an exception would cancel all next polls of the workspace
+                    LOGGER.log(Level.WARNING, "Cannot poll workspace " + workspace.getName(), e);
+                }
+            }
+        }, 0, interval, unit);
+
+        ScheduledFuture<?> previousPoll = scheduledPolls.put(workspace, scheduledPoll);
+        if (previousPoll != null) {
+            previousPoll.cancel(false);
+        }
+    }
+
+    /**
+     * Fetch some sources of each workspace once, as soon as possible, outside of their scheduled polls.
+     * The workspaces are polled one after the other, so that the first one fetches the sources they share
+     * and the next ones read its events.
+     */
+    public void pollNow(final Map<Workspace, ? extends Collection<Pollable>> sources) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<Workspace, ? extends Collection<Pollable>> workspaceSources : sources.entrySet()) {
+                    try {
+                        workspaceSources.getKey().poll(workspaceSources.getValue());
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Cannot poll workspace " + workspaceSources.getKey().getName(), e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Run a maintenance task, like the eviction of idle workspaces, every <code>interval</code>.
+     */
+    public void schedule(final Runnable task, long interval, TimeUnit unit) {
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Cannot run task " + task, e);
+                }
+            }
+        }, interval, interval, unit);
+    }
+
+    public void cancel(Workspace workspace) {
+        ScheduledFuture<?> scheduledPoll = scheduledPolls.remove(workspace);
+        if (scheduledPoll != null) {
+            scheduledPoll.cancel(false);
+        }
+    }
+
+    /**
+     * Stop scheduling polls and interrupt the polls in progress, without waiting for them.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        scheduledPolls.clear();
+    }
+
+    /**
+     * Wait for the polls still in progress after <code>shutdown()</code>, e.g. before closing the logs they append to.
+     * @return false if some polls are still in progress after the timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
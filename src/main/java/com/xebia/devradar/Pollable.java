@@ -5,4 +5,9 @@ import java.util.Set;
 public interface Pollable {
 
     Set<Event> fetch();
+
+    /**
+     * @return the url of the polled source, used to report its refresh status
+     */
+    String getUrl();
 }
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The json of a workspace with a published version of its timeline, rendered once in utf-8 and gzipped,
+ * to be written as is to all the screens until the timeline is published again.
+ */
+class RenderedWorkspace {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    final TimelineSnapshot timelineSnapshot;
+
+    final byte[] json;
+
+    final byte[] gzippedJson;
+
+    RenderedWorkspace(String name, TimelineSnapshot timelineSnapshot) {
+        this.timelineSnapshot = timelineSnapshot;
+        // same json as the POJO mapping of the workspace
+        Map<String, Object> timeline = new LinkedHashMap<String, Object>();
+        timeline.put("events", timelineSnapshot.events);
+        timeline.put("version", timelineSnapshot.version);
+        timeline.put("epoch", timelineSnapshot.epoch);
+        timeline.put("cursor", timelineSnapshot.cursor);
+        Map<String, Object> workspace = new LinkedHashMap<String, Object>();
+        workspace.put("name", name);
+        workspace.put("timeline", timeline);
+
+        try {
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            OBJECT_MAPPER.writeValue(json, workspace);
+            this.json = json.toByteArray();
+
+            ByteArrayOutputStream gzippedJson = new ByteArrayOutputStream(this.json.length / 4);
+            OutputStream gzip = new GZIPOutputStream(gzippedJson);
+            gzip.write(this.json);
+            gzip.close();
+            this.gzippedJson = gzippedJson.toByteArray();
+        } catch (IOException e) {
+            // no io on byte arrays
+            throw new IllegalStateException("Cannot render workspace " + name, e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A source fetched at most once per interval, whatever the number of workspaces subscribed to it.
+ * The events it gives are appended to a journal, so that each subscription reads all the events fetched
+ * since its previous read, including those fetched for the other subscriptions.
+ * The journal keeps only the events some subscription has not read yet, and the last ones for the workspaces
+ * subscribing later.
+ */
+class SharedSource {
+
+    // default for test
+    static final int HISTORY_SIZE = 100;
+
+    private final Pollable source;
+
+    private final long intervalNanos;
+
+    /*
+     * the event of sequence number n is at index n - 1 - trimmedSequence
+     */
+    private final List<Event> journal = new ArrayList<Event>();
+
+    private long trimmedSequence;
+
+    /*
+     * a source may give the same events again, e.g. GitHub when the branch did not change: the events
+     * of the previous fetch are not appended again
+     */
+    private Set<Event> lastEvents = Collections.emptySet();
+
+    private final List<Subscription> subscribers = new ArrayList<Subscription>();
+
+    private boolean fetched;
+
+    private boolean fetching;
+
+    private long lastFetchTime;
+
+    private volatile long lastSuccessTime;
+
+    SharedSource(Pollable source, long interval, TimeUnit unit) {
+        this.source = source;
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * Fetch the source unless it was fetched less than an interval ago or is being fetched.
+     * A failure is thrown to the subscription which fetched, so that it is counted once: until the next interval,
+     * the other subscriptions read no new events, as if the source did not change.
+     */
+    void refresh() {
+        synchronized (this) {
+            if (fetching) {
+                // its events will be read by the next fetch of the subscription
+                return;
+            }
+            if (fetched && nanoTime() - lastFetchTime < intervalNanos) {
+                return;
+            }
+            fetching = true;
+            fetched = true;
+            lastFetchTime = nanoTime();
+        }
+
+        Set<Event> events;
+        try {
+            events = source.fetch();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                fetching = false;
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            fetching = false;
+            List<Event> newEvents = new ArrayList<Event>(events.size());
+            for (Event event : events) {
+                if (!lastEvents.contains(event)) {
+                    newEvents.add(event);
+                }
+            }
+            // oldest first, so that the history kept for the later subscriptions is the newest events
+            Collections.sort(newEvents, Timeline.OLDEST_FIRST);
+            journal.addAll(newEvents);
+            lastEvents = events;
+            trim();
+            lastSuccessTime = source instanceof CachedPollable ? ((CachedPollable) source).getLastSuccessTime() : System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Let the next refresh fetch the source, e.g. when it notified a change.
+     */
+    synchronized void expire() {
+        fetched = false;
+    }
+
+    synchronized Subscription subscribe() {
+        Subscription subscription = new Subscription();
+        subscribers.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * @return the number of subscriptions left
+     */
+    synchronized int unsubscribe(Subscription subscription) {
+        subscribers.remove(subscription);
+        trim();
+        return subscribers.size();
+    }
+
+    /*
+     * drop the events read by all the subscriptions, but the last ones
+     */
+    private void trim() {
+        long trimSequence = trimmedSequence + journal.size() - HISTORY_SIZE;
+        for (Subscription subscription : subscribers) {
+            trimSequence = Math.min(trimSequence, subscription.cursor);
+        }
+        if (trimSequence > trimmedSequence) {
+            journal.subList(0, (int) (trimSequence - trimmedSequence)).clear();
+            trimmedSequence = trimSequence;
+        }
+    }
+
+    private synchronized Set<Event> read(Subscription subscription) {
+        int from = (int) Math.max(0, subscription.cursor - trimmedSequence);
+        Set<Event> events = new HashSet<Event>(journal.subList(from, journal.size()));
+        subscription.cursor = trimmedSequence + journal.size();
+        trim();
+        return events;
+    }
+
+    // default for test
+    synchronized int getJournalSize() {
+        return journal.size();
+    }
+
+    String getUrl() {
+        return source.getUrl();
+    }
+
+    // default for test
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * The source as seen by one workspace: each fetch answers the events it has not read yet.
+     */
+    class Subscription implements CachedPollable, ResumablePollable {
+
+        /*
+         * the sequence number of the last event read, guarded by the shared source
+         */
+        private long cursor;
+
+        @Override
+        public synchronized Set<Event> fetch() {
+            refresh();
+            return read(this);
+        }
+
+        @Override
+        public long getLastSuccessTime() {
+            return lastSuccessTime;
+        }
+
+        /**
+         * Resume the shared source, unless it was already fetched for another workspace.
+         */
+        @Override
+        public void resume(Collection<Event> events) {
+            if (source instanceof ResumablePollable) {
+                ((ResumablePollable) source).resume(events);
+            }
+        }
+
+        @Override
+        public String getUrl() {
+            return source.getUrl();
+        }
+
+        SharedSource getSharedSource() {
+            return SharedSource.this;
+        }
+    }
+}
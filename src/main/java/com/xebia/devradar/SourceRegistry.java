@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sources of all the workspaces, one per canonical url, so that a source watched by several workspaces
+ * is fetched once per interval instead of once per workspace.
+ */
+public class SourceRegistry {
+
+    private final long interval;
+
+    private final TimeUnit unit;
+
+    // default for test
+    final Map<String, SharedSource> sources = new HashMap<String, SharedSource>();
+
+    public SourceRegistry(long interval, TimeUnit unit) {
+        this.interval = interval;
+        this.unit = unit;
+    }
+
+    /**
+     * @return a subscription to the source of the url of <code>fetcher</code>, which fetches it unless
+     * another workspace already subscribed to that source
+     */
+    public synchronized Pollable subscribe(Pollable fetcher) {
+        String url = canonicalUrl(fetcher.getUrl());
+        SharedSource sharedSource = sources.get(url);
+        if (sharedSource == null) {
+            sharedSource = new SharedSource(fetcher, interval, unit);
+            sources.put(url, sharedSource);
+        }
+        return sharedSource.subscribe();
+    }
+
+    /**
+     * Release the subscriptions of a workspace, forgetting the sources no workspace subscribes to anymore.
+     */
+    public synchronized void unsubscribe(Collection<Pollable> subscriptions) {
+        for (Pollable subscription : subscriptions) {
+            if (subscription instanceof SharedSource.Subscription) {
+                SharedSource sharedSource = ((SharedSource.Subscription) subscription).getSharedSource();
+                if (sharedSource.unsubscribe((SharedSource.Subscription) subscription) == 0) {
+                    sources.remove(canonicalUrl(sharedSource.getUrl()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Let the next fetch of the source call it, even if it was fetched less than an interval ago.
+     */
+    public synchronized void expire(String url) {
+        SharedSource sharedSource = sources.get(canonicalUrl(url));
+        if (sharedSource != null) {
+            sharedSource.expire();
+        }
+    }
+
+    public synchronized int size() {
+        return sources.size();
+    }
+
+    /**
+     * @return the url with its scheme and host in lower case, without default port nor trailing slash
+     */
+    static String canonicalUrl(String url) {
+        if (url == null) {
+            return null;
+        }
+        try {
+            URI uri = new URI(url).normalize();
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return url;
+            }
+            String scheme = uri.getScheme().toLowerCase(Locale.ENGLISH);
+            int port = uri.getPort();
+            if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+                port = -1;
+            }
+            String path = uri.getRawPath();
+            while (path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            return scheme + "://" + uri.getHost().toLowerCase(Locale.ENGLISH) + (port == -1 ? "" : ":" + port) + path
+                    + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Give an int id to each distinct string, so that a column of repeated strings, like authors, is stored as ints.
+ * Not thread safe.
+ */
+class StringDictionary {
+
+    static final int NULL_ID = -1;
+
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    private final List<String> values = new ArrayList<String>();
+
+    /**
+     * @return the id of the string, given on its first occurrence
+     */
+    int idOf(String value) {
+        if (value == null) {
+            return NULL_ID;
+        }
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * @return the id of the string, NULL_ID if it was never given one
+     */
+    int find(String value) {
+        Integer id = value == null ? null : ids.get(value);
+        return id == null ? NULL_ID : id;
+    }
+
+    String get(int id) {
+        return id == NULL_ID ? null : values.get(id);
+    }
+
+    int size() {
+        return values.size();
+    }
+}
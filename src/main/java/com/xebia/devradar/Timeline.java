@@ -18,37 +18,231 @@
  */
 package com.xebia.devradar;
 
-import org.apache.commons.lang.builder.CompareToBuilder;
-
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The newest events of a workspace. The timeline keeps its events in a heap bounded to its size,
+ * so that adding new events costs O(new events * log size) whatever the number of events of the workspace.
+ *
+ * Each publication gets a new version, and readers can wait for the events published after a version they know.
+ * Versions start again with each timeline, so readers know a version by a cursor holding the epoch of its timeline.
+ */
 public class Timeline {
     static final int MAX_SIZE = 10;
 
-    List<Event> events = new ArrayList<Event>();
+    private static final Metrics.Histogram UPDATE_SECONDS = Metrics.histogram("devradar_timeline_update_seconds", "Time to add events to a timeline and publish it");
+
+    static final Comparator<Event> OLDEST_FIRST = new Comparator<Event>() {
+        @Override
+        public int compare(Event o1, Event o2) {
+            return o1.timestamp < o2.timestamp ? -1 : (o1.timestamp == o2.timestamp ? 0 : 1);
+        }
+    };
+
+    final int maxSize;
+
+    /*
+     * the oldest kept event is the head of the heap, to be replaced by a newer one
+     */
+    private final PriorityQueue<Event> newestEvents;
+
+    /*
+     * the events of the heap, whose contains is linear
+     */
+    private final Set<Event> newestEventSet;
+
+    private static final AtomicLong LAST_EPOCH = new AtomicLong();
+
+    /*
+     * part of the cursors and entity tags, so that the versions of a previous run or of an evicted workspace
+     * are not mistaken for the ones of this timeline
+     */
+    private final String epoch = Long.toString(nextEpoch(), Character.MAX_RADIX);
+
+    /*
+     * replaced as a whole on each update so that readers always see a complete snapshot
+     */
+    volatile TimelineSnapshot snapshot = new TimelineSnapshot(epoch, 0, getCursor(0), System.currentTimeMillis(), getEntityTag(0), new ArrayList<Event>());
+
+    /*
+     * version in which each event of the timeline was published
+     */
+    private Map<Event, Long> publishedVersions = new HashMap<Event, Long>();
+
+    public Timeline() {
+        this(MAX_SIZE);
+    }
+
+    public Timeline(int maxSize) {
+        this.maxSize = maxSize;
+        this.newestEvents = new PriorityQueue<Event>(maxSize, OLDEST_FIRST);
+        this.newestEventSet = new HashSet<Event>(maxSize * 2);
+    }
 
     public List<Event> getEvents() {
-        return events;
+        return snapshot.events;
+    }
+
+    public long getVersion() {
+        return snapshot.version;
+    }
+
+    /**
+     * @return the cursor of the last published version, to wait for the next one
+     */
+    public String getCursor() {
+        return snapshot.cursor;
+    }
+
+    /**
+     * @return the last published version of the timeline
+     */
+    TimelineSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return a strong entity tag of the published version, for HTTP caching
+     */
+    String getEntityTag() {
+        return snapshot.entityTag;
+    }
+
+    private String getEntityTag(long version) {
+        return epoch + "-" + version;
     }
 
-    public void update(Collection<Event> workspaceEvents) {
+    /**
+     * @return the creation time of the timeline or journal, unique among those created since the start
+     */
+    static long nextEpoch() {
+        while (true) {
+            long lastEpoch = LAST_EPOCH.get();
+            long epoch = Math.max(System.currentTimeMillis(), lastEpoch + 1);
+            if (LAST_EPOCH.compareAndSet(lastEpoch, epoch)) {
+                return epoch;
+            }
+        }
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the cursor of a version of this timeline, <code>epoch:version</code>
+     */
+    String getCursor(long version) {
+        return epoch + ":" + version;
+    }
+
+    /**
+     * Wait until a version newer than the one of <code>knownCursor</code> is published, or until the timeout.
+     * A cursor of another timeline, from before a restart or an eviction, or no cursor at all, is answered
+     * at once with all the events: the reader knows it from the epoch of the update.
+     *
+     * @param knownCursor the cursor of the last update received, null if none
+     * @return the events published after <code>knownCursor</code> that are still in the timeline, empty on timeout
+     */
+    public synchronized TimelineUpdate awaitUpdate(String knownCursor, long timeout, TimeUnit unit) throws InterruptedException {
+        long knownVersion = getKnownVersion(knownCursor);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (long remaining = unit.toNanos(timeout); snapshot.version == knownVersion && remaining > 0; remaining = deadline - System.nanoTime()) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        List<Event> publishedEvents = new ArrayList<Event>();
+        for (Event event : snapshot.events) {
+            if (publishedVersions.get(event) > knownVersion) {
+                publishedEvents.add(event);
+            }
+        }
+        return new TimelineUpdate(epoch, snapshot.version, getCursor(snapshot.version), maxSize, publishedEvents);
+    }
+
+    /**
+     * @return the version of a cursor of this timeline, -1 for any other cursor so that all the events are published after it
+     */
+    private long getKnownVersion(String knownCursor) {
+        String epochPrefix = epoch + ":";
+        if (knownCursor == null || !knownCursor.startsWith(epochPrefix)) {
+            return -1;
+        }
+        try {
+            long knownVersion = Long.parseLong(knownCursor.substring(epochPrefix.length()));
+            return knownVersion >= 0 && knownVersion <= snapshot.version ? knownVersion : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-        List<Event> workspaceSortedEvents = new ArrayList<Event>(workspaceEvents);
-        Collections.sort(workspaceSortedEvents, Collections.reverseOrder(new Comparator<Event>() {
-            @Override
-            public int compare(Event o1, Event o2) {
-                return new CompareToBuilder().append(o1.timestamp, o2.timestamp).toComparison();
+    /**
+     * Rebuild the timeline from all the events of the workspace.
+     */
+    public synchronized void update(Collection<Event> workspaceEvents) {
+        long start = System.nanoTime();
+        newestEvents.clear();
+        newestEventSet.clear();
+        for (Event event : workspaceEvents) {
+            offer(event);
+        }
+        publish();
+        UPDATE_SECONDS.observeSince(start);
+    }
+
+    /**
+     * Add the events newly fetched by the workspace; the timeline is published again only if they changed it.
+     */
+    public synchronized void add(Collection<Event> newEvents) {
+        long start = System.nanoTime();
+        boolean changed = false;
+        for (Event event : newEvents) {
+            changed |= offer(event);
+        }
+        if (changed) {
+            publish();
+        }
+        UPDATE_SECONDS.observeSince(start);
+    }
+
+    private boolean offer(Event event) {
+        if (newestEvents.size() < maxSize) {
+            if (!newestEventSet.add(event)) {
+                return false;
             }
-        }));
+            newestEvents.add(event);
+            return true;
+        }
+        if (OLDEST_FIRST.compare(event, newestEvents.peek()) <= 0 || !newestEventSet.add(event)) {
+            return false;
+        }
+        newestEventSet.remove(newestEvents.poll());
+        newestEvents.add(event);
+        return true;
+    }
 
-        if (workspaceSortedEvents.size() < MAX_SIZE) {
-            this.events = workspaceSortedEvents;
-        } else {
-            this.events = workspaceSortedEvents.subList(0, MAX_SIZE);
+    private void publish() {
+        long newVersion = snapshot.version + 1;
+        Map<Event, Long> newPublishedVersions = new HashMap<Event, Long>();
+        for (Event event : newestEvents) {
+            Long publishedVersion = publishedVersions.get(event);
+            newPublishedVersions.put(event, publishedVersion != null ? publishedVersion : newVersion);
         }
+        List<Event> sortedEvents = new ArrayList<Event>(newestEvents);
+        Collections.sort(sortedEvents, Collections.reverseOrder(OLDEST_FIRST));
+        this.publishedVersions = newPublishedVersions;
+        this.snapshot = new TimelineSnapshot(epoch, newVersion, getCursor(newVersion), System.currentTimeMillis(), getEntityTag(newVersion), sortedEvents);
+        // wake up the readers waiting for an update
+        notifyAll();
     }
 }
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.List;
+
+/**
+ * A published version of a timeline, never modified.
+ */
+class TimelineSnapshot {
+
+    final String epoch;
+    final long version;
+    final String cursor;
+    final long publicationTime;
+    final String entityTag;
+    /*
+     * newest first
+     */
+    final List<Event> events;
+
+    TimelineSnapshot(String epoch, long version, String cursor, long publicationTime, String entityTag, List<Event> events) {
+        this.epoch = epoch;
+        this.version = version;
+        this.cursor = cursor;
+        this.publicationTime = publicationTime;
+        this.entityTag = entityTag;
+        this.events = events;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.List;
+
+/**
+ * The events published in a timeline after a version known by a reader, newest first.
+ * The reader keeps at most <code>maxSize</code> events, as the timeline does, and asks for the next update
+ * with <code>cursor</code>. When the epoch is not the one of the previous update, the timeline was created again
+ * and the update holds all its events: the events kept by the reader are to be dropped.
+ */
+public class TimelineUpdate {
+
+    public final String epoch;
+    public final long version;
+    public final String cursor;
+    public final int maxSize;
+    public final List<Event> events;
+
+    public TimelineUpdate(String epoch, long version, String cursor, int maxSize, List<Event> events) {
+        this.epoch = epoch;
+        this.version = version;
+        this.cursor = cursor;
+        this.maxSize = maxSize;
+        this.events = events;
+    }
+}
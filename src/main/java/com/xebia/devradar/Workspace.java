@@ -18,43 +18,276 @@
  */
 package com.xebia.devradar;
 
+import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /*
  * make fields visible for tests.
  */
 public class Workspace {
 
+    private static final Logger LOGGER = Logger.getLogger(Workspace.class.getName());
+
+    private static final Metrics.Counter INGESTED_EVENTS = Metrics.counter("devradar_events_ingested_total", "Events fetched for the first time");
+
+    private static final Metrics.Counter DUPLICATE_EVENTS = Metrics.counter("devradar_events_duplicate_total", "Events fetched again and ignored");
+
+    private static final String SKIPPED_FETCHES_METRIC = "devradar_fetches_skipped_total";
+
+    private static final Metrics.Histogram RENDER_SECONDS = Metrics.histogram("devradar_workspace_render_seconds", "Time to render the json of a workspace");
+
     String name;
-    List<Event> events = new ArrayList<Event>();
+    /*
+     * all the events in the order they were ingested, indexed so that an event fetched again is not stored twice
+     */
+    EventJournal journal = new EventJournal();
     Timeline timeline;
     Collection<Pollable> fetchers;
+    FetchStage fetchStage;
+    Map<String, Long> lastRefreshes = new ConcurrentHashMap<String, Long>();
+    /*
+     * all the sources are fetched at each poll, unless their intervals are adapted to their activity
+     */
+    Map<Pollable, AdaptivePollInterval> pollIntervals = new HashMap<Pollable, AdaptivePollInterval>();
+    private final Map<Pollable, Metrics.Counter> skippedFetches = new HashMap<Pollable, Metrics.Counter>();
+    /*
+     * rendered again only when the timeline is published
+     */
+    volatile RenderedWorkspace rendered;
+    /*
+     * null when the events are not persisted
+     */
+    EventLog eventLog;
 
     public Workspace() {
-        this(Arrays.asList(new HudsonFetcher("http://fluxx.fr.cr:8080/hudson", "dev-radar"), new GitHubFetcher("http://github.com/api/v2/json/commits/list/xebia-france/dev-radar/master")), new Timeline());
+        this(new Timeline(), FetchStage.DIRECT);
     }
 
+    public Workspace(Timeline timeline, FetchStage fetchStage) {
+        this(WorkspaceSources.DEFAULT.createFetchers(), timeline, fetchStage);
+    }
 
     public Workspace(Collection<Pollable> fetchers, Timeline timeline) {
+        this(fetchers, timeline, FetchStage.DIRECT);
+    }
+
+    public Workspace(Collection<Pollable> fetchers, Timeline timeline, FetchStage fetchStage) {
         this.fetchers = fetchers;
         this.timeline = timeline;
+        this.fetchStage = fetchStage;
         this.name = "Dev Radar";
     }
 
+    /**
+     * Fetch each source between <code>min</code> and <code>max</code> apart depending on how often it gives new events,
+     * the workspace being polled every <code>min</code>.
+     */
+    void adaptPollIntervals(long min, long max, TimeUnit unit) {
+        for (Pollable fetcher : fetchers) {
+            pollIntervals.put(fetcher, new AdaptivePollInterval(min, max, unit));
+            skippedFetches.put(fetcher, Metrics.counter(SKIPPED_FETCHES_METRIC, "Polls which left out a source not due yet", "source", String.valueOf(fetcher.getUrl())));
+        }
+    }
+
+    /**
+     * Fetch the sources which are due and publish a new timeline. Called by the <code>PollScheduler</code>,
+     * never on the read path.
+     */
     void poll() {
+        long pollTime = System.nanoTime();
+        List<Pollable> dueFetchers = getDueFetchers(pollTime);
+        if (dueFetchers.isEmpty()) {
+            return;
+        }
+        ingest(dueFetchers, fetchStage.fetch(dueFetchers), pollTime);
+    }
+
+    /**
+     * Fetch some sources now, whether they are due or not, e.g. when they notify a change.
+     */
+    void poll(Collection<Pollable> sources) {
+        long pollTime = System.nanoTime();
+        ingest(sources, fetchStage.fetch(sources), pollTime);
+    }
+
+    /**
+     * Ingest the events pushed by a source as if they were fetched from it.
+     */
+    void push(Pollable source, Set<Event> events) {
+        ingest(Collections.singletonList(source), Collections.singletonMap(source, events), System.nanoTime());
+    }
+
+    /*
+     * fetches run outside of the lock, so that a push is not held by a poll waiting for its sources
+     */
+    private synchronized void ingest(Collection<Pollable> dueFetchers, Map<Pollable, Set<Event>> fetchedEvents, long pollTime) {
+        long refreshTime = System.currentTimeMillis();
+        List<Event> newEvents = new ArrayList<Event>();
+        int fetchedCount = 0;
+        for (Pollable fetcher : dueFetchers) {
+            AdaptivePollInterval pollInterval = pollIntervals.get(fetcher);
+            if (pollInterval != null && !fetchedEvents.containsKey(fetcher)) {
+                pollInterval.failed(pollTime);
+            }
+        }
+        for (Map.Entry<Pollable, Set<Event>> sourceEvents : fetchedEvents.entrySet()) {
+            int sourceNewEvents = newEvents.size();
+            for (Event event : sourceEvents.getValue()) {
+                if (this.journal.appendIfAbsent(event) > 0) {
+                    newEvents.add(event);
+                }
+            }
+            fetchedCount += sourceEvents.getValue().size();
+            AdaptivePollInterval pollInterval = pollIntervals.get(sourceEvents.getKey());
+            if (pollInterval != null) {
+                pollInterval.fetched(pollTime, newEvents.size() > sourceNewEvents);
+            }
+            long sourceRefreshTime = getRefreshTime(sourceEvents.getKey(), refreshTime);
+            if (sourceRefreshTime > 0) {
+                this.lastRefreshes.put(sourceEvents.getKey().getUrl(), sourceRefreshTime);
+            }
+        }
+        INGESTED_EVENTS.add(newEvents.size());
+        DUPLICATE_EVENTS.add(fetchedCount - newEvents.size());
+        appendToLog(newEvents);
+        this.timeline.add(newEvents);
+        getRendered();
+    }
+
+    private synchronized List<Pollable> getDueFetchers(long pollTime) {
+        List<Pollable> dueFetchers = new ArrayList<Pollable>(fetchers.size());
+        for (Pollable fetcher : fetchers) {
+            AdaptivePollInterval pollInterval = pollIntervals.get(fetcher);
+            if (pollInterval == null || pollInterval.isDue(pollTime)) {
+                dueFetchers.add(fetcher);
+            } else {
+                skippedFetches.get(fetcher).increment();
+            }
+        }
+        return dueFetchers;
+    }
+
+    /**
+     * @return the time the events of the source were fetched, earlier than the poll when cached events were answered,
+     * 0 if the source never answered
+     */
+    private long getRefreshTime(Pollable source, long pollTime) {
+        if (source instanceof CachedPollable) {
+            return ((CachedPollable) source).getLastSuccessTime();
+        }
+        return pollTime;
+    }
+
+    /**
+     * Restore the events of a previous run from the log, then log the new events in it.
+     * The sources resume after the restored events, so that they do not fetch their whole history again.
+     */
+    void restore(EventLog eventLog) throws IOException {
+        List<Event> loggedEvents = eventLog.replay();
+        List<Event> restoredEvents = new ArrayList<Event>();
+        for (Event event : loggedEvents) {
+            if (this.journal.appendIfAbsent(event) > 0) {
+                restoredEvents.add(event);
+            }
+        }
         for (Pollable fetcher : fetchers) {
-            this.events.addAll(fetcher.fetch());
+            if (fetcher instanceof ResumablePollable) {
+                ((ResumablePollable) fetcher).resume(loggedEvents);
+            }
+        }
+        this.timeline.add(restoredEvents);
+        this.eventLog = eventLog;
+    }
+
+    private void appendToLog(List<Event> newEvents) {
+        if (eventLog == null || newEvents.isEmpty()) {
+            return;
+        }
+        try {
+            eventLog.append(newEvents);
+        } catch (IOException e) {
+            // the events are still published, they will be fetched again after a restart
+            LOGGER.log(Level.WARNING, "Cannot log the events of workspace " + name, e);
+        }
+    }
+
+    /**
+     * Force the logged events to disk.
+     */
+    void syncLog() {
+        if (eventLog == null) {
+            return;
+        }
+        try {
+            eventLog.sync();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot sync the event log of workspace " + name, e);
+        }
+    }
+
+    /*
+     * waits for an ingestion in progress, the next ones do not log their events anymore
+     */
+    synchronized void close() {
+        if (eventLog == null) {
+            return;
+        }
+        try {
+            eventLog.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot close the event log of workspace " + name, e);
+        } finally {
+            eventLog = null;
         }
-        this.timeline.update(this.events);
     }
 
     public String getName() {
         return name;
     }
 
+    /**
+     * @return the last published timeline, without polling the sources
+     */
     public Timeline getTimeline() {
-        poll();
         return timeline;
     }
+
+    /**
+     * @return the json of the workspace with the last published timeline, rendered once per publication
+     */
+    RenderedWorkspace getRendered() {
+        RenderedWorkspace rendered = this.rendered;
+        TimelineSnapshot timelineSnapshot = timeline.getSnapshot();
+        if (rendered == null || rendered.timelineSnapshot != timelineSnapshot) {
+            // concurrent readers may render the same snapshot twice, the last one is kept
+            long start = System.nanoTime();
+            rendered = new RenderedWorkspace(name, timelineSnapshot);
+            RENDER_SECONDS.observeSince(start);
+            this.rendered = rendered;
+        }
+        return rendered;
+    }
+
+    /**
+     * @return the sources of the workspace
+     */
+    Collection<Pollable> getFetchers() {
+        return fetchers;
+    }
+
+    EventJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return the time of the last successful fetch of each source, by source url
+     */
+    Map<String, Long> getLastRefreshes() {
+        return lastRefreshes;
+    }
 }
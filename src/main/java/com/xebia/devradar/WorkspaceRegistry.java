@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keep workspaces, their fetchers and their events alive across requests.
+ * A workspace is created and scheduled for polling on its first access, and evicted once idle.
+ * Workspaces are identified by a positive id, and at most <code>maxWorkspaces</code> of them are kept at once.
+ * When a data directory is given, the events of each workspace are logged in it and restored on its creation.
+ * The workspaces watching the same source share its fetches through a <code>SourceRegistry</code>.
+ */
+public class WorkspaceRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceRegistry.class.getName());
+
+    static final int DEFAULT_MAX_WORKSPACES = 100;
+
+    private final PollScheduler pollScheduler;
+
+    private final FetchStage fetchStage;
+
+    private final long pollIntervalMillis;
+
+    private final long maxPollIntervalMillis;
+
+    private final int timelineSize;
+
+    /*
+     * null when the events are not persisted
+     */
+    private final File dataDir;
+
+    private final WorkspaceSources sources;
+
+    private final SourceRegistry sourceRegistry;
+
+    private volatile int maxWorkspaces = DEFAULT_MAX_WORKSPACES;
+
+    // default for test
+    Map<Long, RegisteredWorkspace> workspaces = new ConcurrentHashMap<Long, RegisteredWorkspace>();
+
+    public WorkspaceRegistry(PollScheduler pollScheduler, FetchStage fetchStage, long pollInterval, TimeUnit unit, int timelineSize) {
+        this(pollScheduler, fetchStage, pollInterval, unit, timelineSize, null);
+    }
+
+    public WorkspaceRegistry(PollScheduler pollScheduler, FetchStage fetchStage, long pollInterval, TimeUnit unit, int timelineSize, File dataDir) {
+        this(pollScheduler, fetchStage, pollInterval, unit, timelineSize, dataDir, WorkspaceSources.DEFAULT);
+    }
+
+    public WorkspaceRegistry(PollScheduler pollScheduler, FetchStage fetchStage, long pollInterval, TimeUnit unit, int timelineSize, File dataDir,
+                             WorkspaceSources sources) {
+        this(pollScheduler, fetchStage, pollInterval, pollInterval, unit, timelineSize, dataDir, sources);
+    }
+
+    /**
+     * @param pollInterval the interval between two polls of a workspace, and between two fetches of its active sources
+     * @param maxPollInterval the interval between two fetches of the sources which give no new events
+     */
+    public WorkspaceRegistry(PollScheduler pollScheduler, FetchStage fetchStage, long pollInterval, long maxPollInterval, TimeUnit unit, int timelineSize,
+                             File dataDir, WorkspaceSources sources) {
+        this.pollScheduler = pollScheduler;
+        this.fetchStage = fetchStage;
+        this.pollIntervalMillis = unit.toMillis(pollInterval);
+        this.maxPollIntervalMillis = unit.toMillis(maxPollInterval);
+        this.timelineSize = timelineSize;
+        this.dataDir = dataDir;
+        this.sources = sources;
+        // a source is fetched at most once per poll interval, the shortest of its workspaces
+        this.sourceRegistry = new SourceRegistry(pollInterval, unit);
+    }
+
+    /**
+     * Limit the number of workspaces kept at once, each of them having its own poller and log.
+     */
+    public void setMaxWorkspaces(int maxWorkspaces) {
+        this.maxWorkspaces = maxWorkspaces;
+    }
+
+    /**
+     * @return the workspace registered with this id, created on first access
+     * @throws IllegalArgumentException if the id is not positive
+     * @throws IllegalStateException if the workspace does not exist and <code>maxWorkspaces</code> are already registered
+     */
+    public Workspace get(Long id) {
+        if (id == null || id <= 0) {
+            throw new IllegalArgumentException("invalid workspace id " + id);
+        }
+        RegisteredWorkspace registeredWorkspace = workspaces.get(id);
+        if (registeredWorkspace == null) {
+            registeredWorkspace = register(id);
+        } else {
+            registeredWorkspace.lastAccess = currentTimeMillis();
+        }
+        return registeredWorkspace.workspace;
+    }
+
+    private synchronized RegisteredWorkspace register(Long id) {
+        RegisteredWorkspace registeredWorkspace = workspaces.get(id);
+        if (registeredWorkspace != null) {
+            registeredWorkspace.lastAccess = currentTimeMillis();
+        } else {
+            if (workspaces.size() >= maxWorkspaces) {
+                throw new IllegalStateException("cannot create workspace " + id + ", " + maxWorkspaces + " workspaces are already registered");
+            }
+            // accessed now, so that it is not evicted before its first read
+            registeredWorkspace = new RegisteredWorkspace(createWorkspace(id), currentTimeMillis());
+            workspaces.put(id, registeredWorkspace);
+            pollScheduler.schedule(registeredWorkspace.workspace, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return registeredWorkspace;
+    }
+
+    /**
+     * @return the workspaces registered so far, without creating any
+     */
+    public Collection<Workspace> getWorkspaces() {
+        List<Workspace> registeredWorkspaces = new ArrayList<Workspace>();
+        for (RegisteredWorkspace registeredWorkspace : workspaces.values()) {
+            registeredWorkspaces.add(registeredWorkspace.workspace);
+        }
+        return registeredWorkspaces;
+    }
+
+    public synchronized void evict(Long id) {
+        RegisteredWorkspace registeredWorkspace = workspaces.remove(id);
+        if (registeredWorkspace != null) {
+            pollScheduler.cancel(registeredWorkspace.workspace);
+            release(registeredWorkspace.workspace);
+        }
+    }
+
+    /**
+     * Evict the workspaces which have not been read for more than <code>maxIdle</code>.
+     * @return the number of evicted workspaces
+     */
+    public synchronized int evictIdle(long maxIdle, TimeUnit unit) {
+        long oldestAccess = currentTimeMillis() - unit.toMillis(maxIdle);
+        int evicted = 0;
+        for (Iterator<RegisteredWorkspace> iterator = workspaces.values().iterator(); iterator.hasNext();) {
+            RegisteredWorkspace registeredWorkspace = iterator.next();
+            if (registeredWorkspace.lastAccess < oldestAccess) {
+                iterator.remove();
+                pollScheduler.cancel(registeredWorkspace.workspace);
+                release(registeredWorkspace.workspace);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Force the logged events of all the workspaces to disk.
+     */
+    public void syncLogs() {
+        for (RegisteredWorkspace registeredWorkspace : workspaces.values()) {
+            registeredWorkspace.workspace.syncLog();
+        }
+    }
+
+    /**
+     * Evict all the workspaces, closing their logs.
+     */
+    public synchronized void close() {
+        for (Iterator<RegisteredWorkspace> iterator = workspaces.values().iterator(); iterator.hasNext();) {
+            RegisteredWorkspace registeredWorkspace = iterator.next();
+            iterator.remove();
+            pollScheduler.cancel(registeredWorkspace.workspace);
+            release(registeredWorkspace.workspace);
+        }
+    }
+
+    private void release(Workspace workspace) {
+        sourceRegistry.unsubscribe(workspace.getFetchers());
+        workspace.close();
+    }
+
+    public WorkspaceSources getSources() {
+        return sources;
+    }
+
+    public SourceRegistry getSourceRegistry() {
+        return sourceRegistry;
+    }
+
+    Workspace createWorkspace(Long id) {
+        List<Pollable> subscriptions = new ArrayList<Pollable>();
+        for (Pollable fetcher : sources.createFetchers()) {
+            subscriptions.add(sourceRegistry.subscribe(fetcher));
+        }
+        Workspace workspace = new Workspace(subscriptions, new Timeline(timelineSize), fetchStage);
+        if (maxPollIntervalMillis > pollIntervalMillis) {
+            workspace.adaptPollIntervals(pollIntervalMillis, maxPollIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        if (dataDir != null) {
+            File logFile = new File(dataDir, "workspace-" + id + ".log");
+            try {
+                EventLog eventLog = EventLog.open(logFile);
+                try {
+                    workspace.restore(eventLog);
+                } catch (IOException e) {
+                    eventLog.close();
+                    throw e;
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot restore workspace " + id + " from " + logFile + ", its events are not persisted", e);
+            }
+        }
+        return workspace;
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    static class RegisteredWorkspace {
+
+        final Workspace workspace;
+
+        volatile long lastAccess;
+
+        RegisteredWorkspace(Workspace workspace, long lastAccess) {
+            this.workspace = workspace;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -18,24 +18,148 @@
  */
 package com.xebia.devradar;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * JAX-RS SUb-Resource to handle a Workspace.
  */
 public class WorkspaceResource {
 
+    /**
+     * time a request for updates is held when the timeline does not change, below the usual proxy timeouts
+     */
+    static final long UPDATE_TIMEOUT_SECONDS = 30;
+
+    /**
+     * requests for updates held at once by default, each holding a thread of the servlet container
+     */
+    static final int DEFAULT_MAX_UPDATE_WAITERS = 100;
+
+    /**
+     * time after which a screen refused for too many held requests asks again
+     */
+    static final long UPDATE_RETRY_AFTER_SECONDS = 10;
+
+    /**
+     * maximum number of events read from the journal at once
+     */
+    static final int MAX_JOURNAL_PAGE_SIZE = 1000;
+
+    private static final String GZIP_ENCODING = "gzip";
+
+    private static final String RETRY_AFTER = "Retry-After";
+
     private Workspace workspace;
 
-    public WorkspaceResource(Workspace workspace) {
+    /*
+     * shared by all the workspaces, a permit per request for updates held
+     */
+    private final Semaphore updateWaiters;
+
+    public WorkspaceResource(Workspace workspace, Semaphore updateWaiters) {
         this.workspace = workspace;
+        this.updateWaiters = updateWaiters;
+    }
+
+    /**
+     * The workspace is tagged with the version of its timeline: a screen which already has this version
+     * gets a 304. Otherwise the json rendered when the timeline was published is written as is, gzipped if accepted.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getWorkspace(@Context Request request, @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        RenderedWorkspace rendered = workspace.getRendered();
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains(GZIP_ENCODING);
+        // each encoding is a distinct representation with its own strong tag
+        EntityTag entityTag = new EntityTag(rendered.timelineSnapshot.entityTag + (gzip ? "-" + GZIP_ENCODING : ""));
+        Date lastModified = new Date(rendered.timelineSnapshot.publicationTime / 1000 * 1000);
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+
+        Response.ResponseBuilder response = request.evaluatePreconditions(lastModified, entityTag);
+        if (response == null) {
+            if (gzip) {
+                response = Response.ok(rendered.gzippedJson).header(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING);
+            } else {
+                response = Response.ok(rendered.json);
+            }
+            response.lastModified(lastModified);
+        }
+        return response.tag(entityTag).cacheControl(cacheControl).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+    }
+
+    /**
+     * @return the time of the last refresh of each source of the workspace, to spot stale data
+     */
+    @GET
+    @Path("sources")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Long> getSources() {
+        return workspace.getLastRefreshes();
+    }
+
+    /**
+     * Long poll for the events published after the version known by the screen: the request is answered as soon as
+     * the timeline is published again, or with no events after <code>UPDATE_TIMEOUT_SECONDS</code>.
+     * A cursor of a previous run or of an evicted workspace is answered at once with all the events and a new epoch.
+     * <p/>
+     * Each request held takes a thread of the servlet container, so that the requests held at once are capped,
+     * by <code>devradar.updates.max.waiters</code>, below the size of the thread pool of the container: the threads
+     * left serve the other requests. Above the cap, the request is answered with a 503 and a Retry-After.
+     *
+     * @param since the cursor of the last update received, <code>epoch:version</code>, none to get all the events
+     */
+    @GET
+    @Path("updates")
+    @Produces(MediaType.APPLICATION_JSON)
+    public TimelineUpdate getUpdates(@QueryParam("since") String since) {
+        if (!updateWaiters.tryAcquire()) {
+            throw new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(RETRY_AFTER, UPDATE_RETRY_AFTER_SECONDS).build());
+        }
+        try {
+            return workspace.getTimeline().awaitUpdate(since, UPDATE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE);
+        } finally {
+            updateWaiters.release();
+        }
     }
 
+    /**
+     * The events ingested after a cursor, oldest first: a client keeps the returned cursor and reads
+     * the next events with it, until no event is returned.
+     *
+     * A cursor of a previous run or of an evicted workspace is read from the start, in a page of another epoch.
+     *
+     * @param since the cursor returned by the previous read, none to read from the start
+     * @param limit the maximum number of events returned, at most <code>MAX_JOURNAL_PAGE_SIZE</code>
+     */
     @GET
+    @Path("events")
     @Produces(MediaType.APPLICATION_JSON)
-    public Workspace getWorkspace() {
-        return workspace;
+    public JournalPage getEvents(@QueryParam("since") String since, @QueryParam("limit") @DefaultValue("100") int limit) {
+        if (limit <= 0) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+        return workspace.getJournal().read(since, Math.min(limit, MAX_JOURNAL_PAGE_SIZE));
     }
 }
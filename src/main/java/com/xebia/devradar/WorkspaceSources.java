@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The sources polled by each workspace: a Hudson job and a GitHub branch.
+ */
+public class WorkspaceSources {
+
+    static final String DEFAULT_HUDSON_URL = "http://fluxx.fr.cr:8080/hudson";
+
+    static final String DEFAULT_HUDSON_JOB = "dev-radar";
+
+    static final String DEFAULT_GITHUB_URL = "http://github.com/api/v2/json/commits/list/xebia-france/dev-radar/master";
+
+    static final WorkspaceSources DEFAULT = new WorkspaceSources(DEFAULT_HUDSON_URL, DEFAULT_HUDSON_JOB, DEFAULT_GITHUB_URL);
+
+    final String hudsonUrl;
+
+    final String hudsonJob;
+
+    final String gitHubUrl;
+
+    public WorkspaceSources(String hudsonUrl, String hudsonJob, String gitHubUrl) {
+        this.hudsonUrl = hudsonUrl;
+        this.hudsonJob = hudsonJob;
+        this.gitHubUrl = gitHubUrl;
+    }
+
+    /**
+     * @return the url of the commits of a branch on the GitHub of the workspaces: the configured url,
+     * with the owner, repository and branch at the end of its path replaced by those of the branch
+     */
+    public String getGitHubBranchUrl(String owner, String repository, String branch) {
+        String query = "";
+        String path = gitHubUrl;
+        int queryStart = path.indexOf('?');
+        if (queryStart >= 0) {
+            query = path.substring(queryStart);
+            path = path.substring(0, queryStart);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        for (int segment = 0; segment < 3 && path.lastIndexOf('/') >= 0; segment++) {
+            path = path.substring(0, path.lastIndexOf('/'));
+        }
+        return path + "/" + owner + "/" + repository + "/" + branch + query;
+    }
+
+    /**
+     * @return new fetchers of the sources, for a new workspace, each behind its own circuit breaker
+     */
+    public Collection<Pollable> createFetchers() {
+        return Arrays.<Pollable>asList(new CircuitBreakerPollable(new HudsonFetcher(hudsonUrl, hudsonJob)),
+                new CircuitBreakerPollable(new GitHubFetcher(gitHubUrl)));
+    }
+}
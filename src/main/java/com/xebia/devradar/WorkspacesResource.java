@@ -18,8 +18,13 @@
  */
 package com.xebia.devradar;
 
+import javax.servlet.ServletContext;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.Semaphore;
 
 /**
  * JAX-RS Root Resource to handle workspaces.
@@ -27,10 +32,20 @@ import javax.ws.rs.PathParam;
 @Path("/workspaces")
 public class WorkspacesResource {
 
+    @Context
+    ServletContext servletContext;
+
     @Path("{id}")
     public WorkspaceResource getWorkspace(@PathParam("id") Long id) {
 
-        Workspace workspace = new Workspace();
-        return new WorkspaceResource(workspace);
+        WorkspaceRegistry workspaceRegistry = (WorkspaceRegistry) servletContext.getAttribute(DevRadarContextListener.WORKSPACE_REGISTRY_ATTRIBUTE);
+        try {
+            return new WorkspaceResource(workspaceRegistry.get(id),
+                    (Semaphore) servletContext.getAttribute(DevRadarContextListener.UPDATE_WAITERS_ATTRIBUTE));
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            throw new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE);
+        }
     }
 }
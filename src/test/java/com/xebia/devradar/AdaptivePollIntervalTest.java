@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AdaptivePollIntervalTest {
+
+    AdaptivePollInterval pollInterval = new AdaptivePollInterval(60, 300, TimeUnit.NANOSECONDS);
+
+    @Test
+    public void source_should_be_due_before_its_first_fetch() {
+        assertThat(pollInterval.isDue(0), is(true));
+    }
+
+    @Test
+    public void source_should_be_due_once_its_interval_elapsed() {
+        pollInterval.fetched(0, true);
+
+        assertThat(pollInterval.isDue(59), is(false));
+        assertThat(pollInterval.isDue(60), is(true));
+    }
+
+    @Test
+    public void interval_should_lengthen_up_to_the_maximum_while_nothing_changes() {
+        pollInterval.fetched(0, false);
+        assertThat(pollInterval.getIntervalNanos(), equalTo(90L));
+        pollInterval.fetched(0, false);
+        assertThat(pollInterval.getIntervalNanos(), equalTo(135L));
+        for (int i = 0; i < 10; i++) {
+            pollInterval.fetched(0, false);
+        }
+        assertThat(pollInterval.getIntervalNanos(), equalTo(300L));
+    }
+
+    @Test
+    public void new_events_should_bring_the_interval_back_to_the_minimum() {
+        for (int i = 0; i < 10; i++) {
+            pollInterval.fetched(0, false);
+        }
+        pollInterval.fetched(1000, true);
+
+        assertThat(pollInterval.getIntervalNanos(), equalTo(60L));
+        assertThat(pollInterval.isDue(1060), is(true));
+    }
+
+    @Test
+    public void failed_fetch_should_keep_the_interval() {
+        pollInterval.fetched(0, false);
+        pollInterval.failed(100);
+
+        assertThat(pollInterval.getIntervalNanos(), equalTo(90L));
+        assertThat(pollInterval.isDue(189), is(false));
+    }
+}
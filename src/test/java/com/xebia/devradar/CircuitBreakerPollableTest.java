@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+public class CircuitBreakerPollableTest {
+
+    Pollable source = mock(Pollable.class);
+
+    Set<Event> events = new HashSet<Event>(TimelineTest.buildEvents(2));
+
+    long now;
+
+    CircuitBreakerPollable circuitBreaker = new CircuitBreakerPollable(source, 2, 10, 60, TimeUnit.SECONDS) {
+        @Override
+        long nanoTime() {
+            return now;
+        }
+    };
+
+    {
+        when(source.getUrl()).thenReturn("http://hudson/job/dev-radar");
+        // no jitter: the whole backoff
+        circuitBreaker.random = new Random() {
+            @Override
+            public double nextDouble() {
+                return 1;
+            }
+        };
+    }
+
+    @Test
+    public void circuit_should_open_after_consecutive_failures_and_answer_the_last_events() {
+        when(source.fetch()).thenReturn(events).thenThrow(new IllegalStateException("down"));
+        circuitBreaker.fetch();
+        fetchFailing();
+        assertThat(circuitBreaker.getState(), is(CircuitBreakerPollable.State.CLOSED));
+        fetchFailing();
+        assertThat(circuitBreaker.getState(), is(CircuitBreakerPollable.State.OPEN));
+
+        assertThat(circuitBreaker.fetch(), equalTo(events));
+        verify(source, times(3)).fetch();
+    }
+
+    @Test
+    public void success_should_reset_the_failure_count() {
+        when(source.fetch()).thenThrow(new IllegalStateException("down")).thenReturn(events).thenThrow(new IllegalStateException("down"));
+        fetchFailing();
+        circuitBreaker.fetch();
+        fetchFailing();
+        assertThat(circuitBreaker.getState(), is(CircuitBreakerPollable.State.CLOSED));
+    }
+
+    @Test
+    public void successful_trial_after_the_backoff_should_close_the_circuit() {
+        when(source.fetch()).thenThrow(new IllegalStateException("down")).thenThrow(new IllegalStateException("down")).thenReturn(events);
+        fetchFailing();
+        fetchFailing();
+
+        now += TimeUnit.SECONDS.toNanos(9);
+        assertThat(circuitBreaker.fetch().isEmpty(), is(true));
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertThat(circuitBreaker.fetch(), equalTo(events));
+
+        assertThat(circuitBreaker.getState(), is(CircuitBreakerPollable.State.CLOSED));
+        assertThat(circuitBreaker.getLastSuccessTime() > 0, is(true));
+    }
+
+    @Test
+    public void failed_trial_should_open_the_circuit_for_twice_the_backoff() {
+        when(source.fetch()).thenThrow(new IllegalStateException("down"));
+        fetchFailing();
+        fetchFailing();
+        now += TimeUnit.SECONDS.toNanos(10);
+        fetchFailing();
+        assertThat(circuitBreaker.getState(), is(CircuitBreakerPollable.State.OPEN));
+
+        now += TimeUnit.SECONDS.toNanos(19);
+        circuitBreaker.fetch();
+        verify(source, times(3)).fetch();
+        now += TimeUnit.SECONDS.toNanos(1);
+        fetchFailing();
+        verify(source, times(4)).fetch();
+    }
+
+    @Test
+    public void backoff_should_be_jittered_and_capped() {
+        circuitBreaker.random = new Random();
+        for (int openings = 0; openings < 70; openings++) {
+            long backoff = Math.min(60, 10L << Math.min(openings, 10));
+            long jitteredBackoff = circuitBreaker.getBackoffNanos(openings);
+            assertThat(jitteredBackoff, greaterThanOrEqualTo(TimeUnit.SECONDS.toNanos(backoff) / 2));
+            assertThat(jitteredBackoff, lessThanOrEqualTo(TimeUnit.SECONDS.toNanos(backoff)));
+        }
+    }
+
+    @Test
+    public void fetch_should_not_wait_for_a_fetch_in_progress() throws InterruptedException {
+        final CountDownLatch fetching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CircuitBreakerPollable blockedCircuitBreaker = new CircuitBreakerPollable(new Pollable() {
+            @Override
+            public Set<Event> fetch() {
+                fetching.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return events;
+            }
+
+            @Override
+            public String getUrl() {
+                return "http://github/dev-radar";
+            }
+        });
+        Thread blocked = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                blockedCircuitBreaker.fetch();
+            }
+        });
+        blocked.start();
+        fetching.await();
+
+        assertThat(blockedCircuitBreaker.fetch().isEmpty(), is(true));
+
+        release.countDown();
+        blocked.join();
+        assertThat(blockedCircuitBreaker.fetch(), equalTo(events));
+    }
+
+    @Test
+    public void error_should_not_leave_the_fetch_in_progress() {
+        when(source.fetch()).thenThrow(new OutOfMemoryError("heap")).thenReturn(events);
+        try {
+            circuitBreaker.fetch();
+            fail();
+        } catch (OutOfMemoryError e) {
+            // expected
+        }
+
+        assertThat(circuitBreaker.fetch(), equalTo(events));
+        verify(source, times(2)).fetch();
+    }
+
+    private void fetchFailing() {
+        try {
+            circuitBreaker.fetch();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class EventJournalTest {
+
+    EventJournal journal = new EventJournal();
+
+    @Test
+    public void events_should_get_increasing_sequence_numbers() {
+        List<Event> events = TimelineTest.buildEvents(2);
+
+        assertThat(journal.append(events.get(0)), is(1L));
+        assertThat(journal.append(events.get(1)), is(2L));
+        assertThat(journal.getLastSequence(), is(2L));
+    }
+
+    @Test
+    public void only_events_after_the_cursor_should_be_read() {
+        List<Event> events = TimelineTest.buildEvents(5);
+        for (Event event : events) {
+            journal.append(event);
+        }
+
+        JournalPage page = journal.read(journal.getCursor(2), 2);
+
+        assertThat(page.events, equalTo(events.subList(2, 4)));
+        assertThat(page.cursor, equalTo(journal.getEpoch() + ":4"));
+        page = journal.read(page.cursor, 2);
+        assertThat(page.events, equalTo(events.subList(4, 5)));
+        page = journal.read(page.cursor, 2);
+        assertTrue(page.events.isEmpty());
+        assertThat(page.sequence, is(5L));
+    }
+
+    @Test
+    public void unknown_cursor_should_be_read_from_the_start() {
+        List<Event> events = TimelineTest.buildEvents(2);
+        for (Event event : events) {
+            journal.append(event);
+        }
+
+        JournalPage page = journal.read(journal.getCursor(10), 100);
+
+        assertThat(page.events, equalTo(events));
+        assertThat(page.sequence, is(2L));
+    }
+
+    @Test
+    public void cursor_of_another_journal_should_be_read_from_the_start() {
+        List<Event> events = TimelineTest.buildEvents(3);
+        EventJournal previousJournal = new EventJournal();
+        for (Event event : events) {
+            previousJournal.append(event);
+            journal.append(event);
+        }
+
+        JournalPage page = journal.read(previousJournal.read(null, 1).cursor, 100);
+
+        assertThat(page.events, equalTo(events));
+        assertThat(page.epoch, not(equalTo(previousJournal.getEpoch())));
+        assertThat(journal.read(null, 100).events, equalTo(events));
+    }
+
+    @Test
+    public void event_already_appended_should_not_be_appended_again() {
+        List<Event> events = TimelineTest.buildEvents(2);
+
+        assertThat(journal.appendIfAbsent(events.get(0)), is(1L));
+        assertThat(journal.appendIfAbsent(events.get(0)), is(0L));
+        assertThat(journal.appendIfAbsent(events.get(1)), is(2L));
+        assertTrue(journal.contains(events.get(1)));
+    }
+}
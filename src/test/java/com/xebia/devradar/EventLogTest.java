@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class EventLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    EventLog eventLog;
+
+    @After
+    public void closeLog() throws Exception {
+        if (eventLog != null) {
+            eventLog.close();
+        }
+    }
+
+    @Test
+    public void appended_events_should_be_replayed_after_reopening() throws Exception {
+        File file = new File(folder.getRoot(), "workspace-1.log");
+        Event event = new Event("github:8d8be67", 1L, "mrenou", "commit message é", "mrenou@gmail.com", EventLevel.INFO);
+        Event eventWithoutId = new Event(2L, "joe", null, null, null);
+        eventLog = EventLog.open(file);
+        eventLog.append(Arrays.asList(event, eventWithoutId));
+        eventLog.close();
+
+        eventLog = EventLog.open(file);
+        List<Event> events = eventLog.replay();
+
+        assertThat(events, equalTo(Arrays.asList(event, eventWithoutId)));
+        Event replayedEvent = events.get(0);
+        assertThat(replayedEvent.timestamp, is(1L));
+        assertThat(replayedEvent.author, equalTo("mrenou"));
+        assertThat(replayedEvent.message, equalTo("commit message é"));
+        assertThat(replayedEvent.gravatarUrl, equalTo(event.gravatarUrl));
+        assertThat(replayedEvent.level, is(EventLevel.INFO));
+        assertThat(events.get(1).message, nullValue());
+        assertThat(events.get(1).level, nullValue());
+    }
+
+    @Test
+    public void partial_record_should_be_truncated_when_opening() throws Exception {
+        File file = new File(folder.getRoot(), "workspace-1.log");
+        eventLog = EventLog.open(file);
+        eventLog.append(TimelineTest.buildEvents(2));
+        long validSize = eventLog.size();
+        eventLog.append(TimelineTest.buildEvents(1));
+        eventLog.close();
+        truncate(file, file.length() - 3);
+
+        eventLog = EventLog.open(file);
+
+        assertThat(eventLog.size(), is(validSize));
+        assertThat(file.length(), is(validSize));
+        assertThat(eventLog.replay().size(), is(2));
+    }
+
+    @Test
+    public void corrupted_record_should_be_truncated_with_the_next_ones() throws Exception {
+        File file = new File(folder.getRoot(), "workspace-1.log");
+        eventLog = EventLog.open(file);
+        eventLog.append(TimelineTest.buildEvents(1));
+        long validSize = eventLog.size();
+        eventLog.append(TimelineTest.buildEvents(2));
+        eventLog.close();
+        RandomAccessFile corruptedFile = new RandomAccessFile(file, "rw");
+        corruptedFile.seek(validSize + 10);
+        corruptedFile.write(~corruptedFile.read());
+        corruptedFile.close();
+
+        eventLog = EventLog.open(file);
+
+        assertThat(eventLog.size(), is(validSize));
+        assertThat(eventLog.replay().size(), is(1));
+    }
+
+    @Test
+    public void events_should_be_appended_after_a_recovered_tail() throws Exception {
+        File file = new File(folder.getRoot(), "data/workspace-1.log");
+        eventLog = EventLog.open(file);
+        eventLog.append(TimelineTest.buildEvents(1));
+        eventLog.close();
+        truncate(file, file.length() - 1);
+
+        eventLog = EventLog.open(file);
+        eventLog.append(TimelineTest.buildEvents(2));
+        eventLog.sync();
+
+        assertThat(eventLog.replay().size(), is(2));
+    }
+
+    @Test
+    public void event_larger_than_a_record_should_not_be_appended() throws Exception {
+        File file = new File(folder.getRoot(), "workspace-1.log");
+        eventLog = EventLog.open(file);
+        char[] message = new char[EventLog.MAX_PAYLOAD_SIZE];
+        Arrays.fill(message, 'm');
+        List<Event> events = TimelineTest.buildEvents(2);
+        Event largeEvent = new Event("test:large", 1, "joe", new String(message), null, EventLevel.INFO);
+        eventLog.append(Arrays.asList(events.get(0), largeEvent, events.get(1)));
+        eventLog.close();
+
+        eventLog = EventLog.open(file);
+
+        assertThat(eventLog.replay(), equalTo(events));
+    }
+
+    @Test
+    public void malformed_records_with_a_valid_crc_should_fail_the_replay() throws Exception {
+        ByteBuffer unknownLevel = ByteBuffer.allocate(4 + 8 + 3 * 4 + 1);
+        unknownLevel.putInt(-1).putLong(1L).putInt(-1).putInt(-1).putInt(-1).put((byte) 99);
+        ByteBuffer truncatedFields = ByteBuffer.allocate(6);
+        truncatedFields.putInt(-1).putShort((short) 1);
+        ByteBuffer negativeString = ByteBuffer.allocate(4);
+        negativeString.putInt(-2);
+
+        for (ByteBuffer payload : Arrays.asList(unknownLevel, truncatedFields, negativeString)) {
+            File file = folder.newFile("workspace-" + payload.capacity() + ".log");
+            writeRecord(file, payload.array());
+            eventLog = EventLog.open(file);
+            try {
+                eventLog.replay();
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+            eventLog.close();
+            eventLog = null;
+        }
+    }
+
+    private void writeRecord(File file, byte[] payload) throws Exception {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        output.writeInt(payload.length);
+        output.write(payload);
+        output.writeInt((int) crc.getValue());
+        output.close();
+    }
+
+    private void truncate(File file, long length) throws Exception {
+        RandomAccessFile truncatedFile = new RandomAccessFile(file, "rw");
+        truncatedFile.setLength(length);
+        truncatedFile.close();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class EventStoreTest {
+
+    EventStore store = new EventStore();
+
+    @Test
+    public void stored_event_should_be_read_with_all_its_fields() {
+        Event event = new Event("hudson:http://fluxx.fr.cr:8080/hudson/job/dev-radar#42@joëlle", 1285251512000L, "Joëlle", "Build FAILURE",
+                "joelle@example.com", EventLevel.ERROR);
+
+        Event storedEvent = store.get(store.add(event));
+
+        assertThat(storedEvent, not(sameInstance(event)));
+        assertThat(storedEvent.id, equalTo(event.id));
+        assertThat(storedEvent.timestamp, equalTo(event.timestamp));
+        assertThat(storedEvent.author, equalTo(event.author));
+        assertThat(storedEvent.message, equalTo(event.message));
+        assertThat(storedEvent.gravatarUrl, equalTo(event.gravatarUrl));
+        assertThat(storedEvent.level, equalTo(event.level));
+    }
+
+    @Test
+    public void null_fields_should_stay_null() {
+        Event event = Event.withGravatarUrl(null, 0, null, null, null, null);
+        store.add(new Event("github:41a212ee83ca127e3c8cf465891ab7216a705f59", 1, "joe", "", null, EventLevel.UNDIFINED));
+
+        Event storedEvent = store.get(store.add(event));
+
+        assertThat(storedEvent.id, nullValue());
+        assertThat(storedEvent.author, nullValue());
+        assertThat(storedEvent.message, nullValue());
+        assertThat(storedEvent.gravatarUrl, nullValue());
+        assertThat(storedEvent.level, nullValue());
+        assertThat(store.get(0).message, equalTo(""));
+    }
+
+    @Test
+    public void stored_events_should_be_found_by_equality() {
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 1000; i++) {
+            events.add(new Event("hudson:http://hudson/job/dev-radar#" + i + "@joe", i, "joe", "Build SUCCESS", "joe@example.com", EventLevel.INFO));
+            events.add(new Event(i, "joe", "commit " + i, "joe@example.com"));
+        }
+        for (Event event : events) {
+            store.add(event);
+        }
+
+        assertThat(store.size(), is(2000));
+        for (int row = 0; row < events.size(); row++) {
+            assertThat(store.indexOf(events.get(row)), is(row));
+            assertThat(store.get(row), equalTo(events.get(row)));
+        }
+        assertThat(store.indexOf(new Event("hudson:http://hudson/job/dev-radar#1000@joe", 0, "joe", "", null, EventLevel.INFO)), is(-1));
+        assertThat(store.indexOf(new Event(1, "joe", "commit 2", "joe@example.com")), is(-1));
+    }
+
+    @Test
+    public void ids_and_messages_should_be_read_as_stored_whatever_their_encoding() {
+        StringBuilder longMessage = new StringBuilder();
+        while (longMessage.length() < 100000) {
+            longMessage.append("a long commit message ");
+        }
+        List<Event> events = new ArrayList<Event>();
+        for (String id : new String[]{"github:41a212ee83ca127e3c8cf465891ab7216a705f59", "github:41A212EE83", "github:41a", "github:", "no-separator"}) {
+            events.add(new Event(id, 0, "joe", "Build SUCCESS", null, EventLevel.INFO));
+        }
+        events.add(new Event("github:long", 0, "joe", longMessage.toString(), null, EventLevel.UNDIFINED));
+        events.add(new Event("github:after-long", 0, "joe", "fix", null, EventLevel.UNDIFINED));
+
+        for (Event event : events) {
+            store.add(event);
+        }
+
+        for (int row = 0; row < events.size(); row++) {
+            assertThat(store.get(row).id, equalTo(events.get(row).id));
+            assertThat(store.get(row).message, equalTo(events.get(row).message));
+        }
+    }
+}
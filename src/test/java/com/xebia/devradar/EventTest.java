@@ -5,6 +5,7 @@ import org.junit.Test;
 import java.util.Date;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 public class EventTest {
@@ -24,4 +25,24 @@ public class EventTest {
         event = new Event(new Date().getTime(), "mrenou", "msg", null);
         assertThat(event.gravatarUrl, equalTo("http://www.gravatar.com/avatar/d41d8cd98f00b204e9800998ecf8427e?d=mm"));
     }
+
+    @Test
+    public void events_with_same_id_should_be_equal() {
+        Event event = new Event("github:8d8be67", 1L, "mrenou", "msg", "mrenou@gmail.com", EventLevel.UNDIFINED);
+        Event fetchedAgain = new Event("github:8d8be67", 1L, "mrenou", "amended msg", "mrenou@gmail.com", EventLevel.UNDIFINED);
+
+        assertThat(fetchedAgain, equalTo(event));
+        assertThat(fetchedAgain.hashCode(), equalTo(event.hashCode()));
+        assertThat(new Event("github:3ac8e5b", 1L, "mrenou", "msg", "mrenou@gmail.com", EventLevel.UNDIFINED), not(equalTo(event)));
+    }
+
+    @Test
+    public void events_without_id_should_be_compared_on_their_fields() {
+        Event event = new Event(1L, "mrenou", "msg", "mrenou@gmail.com");
+
+        assertThat(new Event(1L, "mrenou", "msg", "mrenou@gmail.com"), equalTo(event));
+        assertThat(new Event(1L, "mrenou", "msg", "mrenou@gmail.com").hashCode(), equalTo(event.hashCode()));
+        assertThat(new Event(2L, "mrenou", "msg", "mrenou@gmail.com"), not(equalTo(event)));
+        assertThat(new Event("github:8d8be67", 1L, "mrenou", "msg", "mrenou@gmail.com", EventLevel.UNDIFINED), not(equalTo(event)));
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class FetchStageTest {
+
+    FetchStage fetchStage = new FetchStage(4, 500, TimeUnit.MILLISECONDS);
+
+    @After
+    public void shutdown() {
+        fetchStage.shutdown();
+    }
+
+    @Test
+    public void sources_should_be_fetched_in_parallel() {
+        Pollable hudson = new SlowPollable("hudson", 300, TimelineTest.buildEvents(2));
+        Pollable github = new SlowPollable("github", 300, TimelineTest.buildEvents(3));
+
+        long start = System.currentTimeMillis();
+        Map<Pollable, Set<Event>> fetchedEvents = fetchStage.fetch(Arrays.asList(hudson, github));
+        long duration = System.currentTimeMillis() - start;
+
+        assertThat(fetchedEvents.get(hudson).size(), is(2));
+        assertThat(fetchedEvents.get(github).size(), is(3));
+        assertThat(duration, lessThan(600L));
+    }
+
+    @Test
+    public void source_missing_its_deadline_should_be_left_out() {
+        Pollable hudson = new SlowPollable("hudson", 5000, TimelineTest.buildEvents(2));
+        Pollable github = new SlowPollable("github", 0, TimelineTest.buildEvents(3));
+
+        Map<Pollable, Set<Event>> fetchedEvents = fetchStage.fetch(Arrays.asList(hudson, github));
+
+        assertThat(fetchedEvents.containsKey(hudson), is(false));
+        assertThat(fetchedEvents.get(github).size(), is(3));
+    }
+
+    @Test
+    public void failing_source_should_be_left_out() {
+        Pollable hudson = new SlowPollable("hudson", 0, null);
+        Pollable github = new SlowPollable("github", 0, TimelineTest.buildEvents(3));
+
+        Map<Pollable, Set<Event>> fetchedEvents = fetchStage.fetch(Arrays.asList(hudson, github));
+
+        assertThat(fetchedEvents.containsKey(hudson), is(false));
+        assertThat(fetchedEvents.get(github).size(), is(3));
+    }
+
+    @Test
+    public void direct_stage_should_fetch_all_sources() {
+        Pollable hudson = new SlowPollable("hudson", 0, TimelineTest.buildEvents(2));
+        Pollable github = new SlowPollable("github", 0, null);
+
+        Map<Pollable, Set<Event>> fetchedEvents = FetchStage.DIRECT.fetch(Arrays.asList(hudson, github));
+
+        assertThat(fetchedEvents.size(), equalTo(1));
+        assertThat(fetchedEvents.get(hudson).size(), is(2));
+    }
+
+    @Test
+    public void fetches_and_failures_should_be_measured_by_source() {
+        Pollable up = new SlowPollable("http://metrics/up", 0, TimelineTest.buildEvents(1));
+        Pollable down = new SlowPollable("http://metrics/down", 0, null);
+
+        FetchStage.DIRECT.fetch(Arrays.asList(up, down));
+
+        assertThat(Metrics.histogram(FetchStage.FETCH_SECONDS_METRIC, "", "source", "http://metrics/up").getCount(), is(1L));
+        assertThat(Metrics.histogram(FetchStage.FETCH_SECONDS_METRIC, "", "source", "http://metrics/down").getCount(), is(1L));
+        assertThat(Metrics.counter(FetchStage.FETCH_FAILURES_METRIC, "", "source", "http://metrics/up").get(), is(0L));
+        assertThat(Metrics.counter(FetchStage.FETCH_FAILURES_METRIC, "", "source", "http://metrics/down").get(), is(1L));
+    }
+
+    /*
+     * Answer after a delay, or fail if there are no events to answer.
+     */
+    private static class SlowPollable implements Pollable {
+
+        private final String url;
+        private final long delay;
+        private final Set<Event> events;
+
+        SlowPollable(String url, long delay, List<Event> events) {
+            this.url = url;
+            this.delay = delay;
+            this.events = events == null ? null : new HashSet<Event>(events);
+        }
+
+        @Override
+        public Set<Event> fetch() {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (events == null) {
+                throw new IllegalStateException(url + " is down");
+            }
+            return events;
+        }
+
+        @Override
+        public String getUrl() {
+            return url;
+        }
+    }
+}
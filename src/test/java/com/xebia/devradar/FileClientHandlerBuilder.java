@@ -87,8 +87,15 @@ public class FileClientHandlerBuilder {
             this.headers = headers;
         }
 
+        /**
+         * Answer as a server giving the ETag header, if any: a request sent with this ETag is not modified.
+         */
         @Override
         public int getResponseCode() throws IOException {
+            List<String> etags = headers.get("ETag");
+            if (etags != null && etags.contains(getRequestProperty("If-None-Match"))) {
+                return HTTP_NOT_MODIFIED;
+            }
             return HTTP_OK;
         }
 
@@ -21,24 +21,31 @@ package com.xebia.devradar;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientHandler;
 import com.sun.jersey.api.client.ClientHandlerException;
-import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
 import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class GitHubFetcherTest {
 
-    private static GitHubFetcher fetcher = new GitHubFetcher("") {
+    private GitHubFetcher fetcher = new GitHubFetcher("") {
         @Override
-        Client buildJerseyClient(ClientConfig clientConfig) {
+        Client buildJerseyClient() {
             ClientHandler clientHandler = FileClientHandlerBuilder.newFileClientHandler()
                     .withHeader("Content-Type", "application/json; charset=utf-8")
-                    .create();return new Client(clientHandler, clientConfig);
+                    .create();
+            return new Client(clientHandler);
         }
     };
 
@@ -66,6 +73,7 @@ public class GitHubFetcherTest {
 
         assertThat(events.size(), CoreMatchers.is(1));
         Event event = events.iterator().next();
+        assertThat(event.id, equalTo("github:8d8be6718e3e32a68b08daf25e4aa8df9bc3e283"));
         assertThat(event.timestamp, equalTo(1294679740000L));
         assertThat(event.author, equalTo("Morgan Renou"));
         assertThat(event.message, equalTo("remove font-family Comic-SANS"));
@@ -103,6 +111,129 @@ public class GitHubFetcherTest {
         assertThat(events.size(), CoreMatchers.is(35));
     }
 
+    @Test
+    public void should_stop_reading_commits_at_the_first_known_commit() {
+        fetcher.url = getUriFromResourceAsString("/github/json/github-rest-stream-2-commit.json");
+        fetcher.knownCommitIds.add("8d8be6718e3e32a68b08daf25e4aa8df9bc35678");
+
+        Set<Event> events = fetcher.fetch();
+
+        assertThat(events.size(), CoreMatchers.is(1));
+        assertThat(events.iterator().next().id, equalTo("github:8d8be6718e3e32a68b08daf25e4aa8df9bc3e283"));
+    }
+
+    @Test
+    public void should_resume_after_the_commits_of_a_previous_run() {
+        fetcher.url = getUriFromResourceAsString("/github/json/github-rest-stream-2-commit.json");
+        fetcher.resume(Arrays.asList(
+                new Event("github:8d8be6718e3e32a68b08daf25e4aa8df9bc35678", 1, "mrenou", "commit", null, EventLevel.UNDIFINED),
+                new Event("hudson:http://fluxx.fr.cr:8080/hudson/job/dev-radar#41@mrenou", 2, "mrenou", "Build SUCCESS", null, EventLevel.INFO)));
+
+        Set<Event> events = fetcher.fetch();
+
+        assertThat(fetcher.knownCommitIds.contains("8d8be6718e3e32a68b08daf25e4aa8df9bc35678"), CoreMatchers.is(true));
+        assertThat(events.size(), CoreMatchers.is(1));
+        assertThat(events.iterator().next().id, equalTo("github:8d8be6718e3e32a68b08daf25e4aa8df9bc3e283"));
+    }
+
+    @Test
+    public void should_return_no_event_if_no_new_commit() {
+        fetcher.url = getUriFromResourceAsString("/github/json/github-rest-stream-35-commits.json");
+        fetcher.fetch();
+
+        Set<Event> events = fetcher.fetch();
+
+        assertThat(events.isEmpty(), CoreMatchers.is(true));
+    }
+
+    @Test
+    public void should_read_next_page_if_no_known_commit_was_found() {
+        final List<String> requestedUrls = new ArrayList<String>();
+        GitHubFetcher pagingFetcher = new GitHubFetcher(getUriFromResourceAsString("/github/json/github-rest-stream-35-commits.json"), 2) {
+            @Override
+            Client buildJerseyClient() {
+                Client client = fetcher.buildJerseyClient();
+                client.addFilter(new ClientFilter() {
+                    @Override
+                    public ClientResponse handle(ClientRequest cr) throws ClientHandlerException {
+                        requestedUrls.add(cr.getURI().toString());
+                        return getNext().handle(cr);
+                    }
+                });
+                return client;
+            }
+        };
+
+        pagingFetcher.fetch();
+
+        assertThat(requestedUrls, equalTo(Arrays.asList(pagingFetcher.url, pagingFetcher.url + "?page=2")));
+    }
+
+    @Test
+    public void should_not_remember_commits_of_a_failed_fetch() {
+        GitHubFetcher pagingFetcher = new GitHubFetcher(getUriFromResourceAsString("/github/json/github-rest-stream-35-commits.json"), 2) {
+            @Override
+            Client buildJerseyClient() {
+                Client client = fetcher.buildJerseyClient();
+                client.addFilter(new ClientFilter() {
+                    @Override
+                    public ClientResponse handle(ClientRequest cr) throws ClientHandlerException {
+                        if (cr.getURI().toString().endsWith("page=2")) {
+                            throw new ClientHandlerException("page 2 is not available");
+                        }
+                        return getNext().handle(cr);
+                    }
+                });
+                return client;
+            }
+        };
+
+        try {
+            pagingFetcher.fetch();
+            fail();
+        } catch (ClientHandlerException e) {
+            // expected
+        }
+
+        assertThat(pagingFetcher.knownCommitIds.isEmpty(), CoreMatchers.is(true));
+    }
+
+    @Test
+    public void next_pages_should_keep_the_query_of_the_url() {
+        assertThat(new GitHubFetcher("http://github.com/commits").getPageUrl(2), equalTo("http://github.com/commits?page=2"));
+        assertThat(new GitHubFetcher("http://github.com/commits?login=dev").getPageUrl(2), equalTo("http://github.com/commits?login=dev&page=2"));
+    }
+
+    @Test
+    public void should_return_previous_events_if_commits_are_not_modified() {
+        GitHubFetcher conditionalFetcher = new GitHubFetcher(getUriFromResourceAsString("/github/json/github-rest-stream-2-commit.json")) {
+            @Override
+            Client buildJerseyClient() {
+                ClientHandler clientHandler = FileClientHandlerBuilder.newFileClientHandler()
+                        .withHeader("Content-Type", "application/json; charset=utf-8")
+                        .withHeader("ETag", "\"2-commits\"")
+                        .create();
+                return new Client(clientHandler);
+            }
+        };
+        Set<Event> events = conditionalFetcher.fetch();
+        assertThat(conditionalFetcher.cachedResponses.get(conditionalFetcher.url).etag, equalTo("\"2-commits\""));
+
+        Set<Event> eventsNotModified = conditionalFetcher.fetch();
+
+        assertThat(eventsNotModified, CoreMatchers.sameInstance(events));
+        assertThat(eventsNotModified.size(), CoreMatchers.is(2));
+    }
+
+    @Test
+    public void should_not_send_conditional_request_without_validator() {
+        fetcher.url = getUriFromResourceAsString("/github/json/github-rest-stream-1-commit.json");
+
+        fetcher.fetch();
+
+        assertThat(fetcher.cachedResponses.containsKey(fetcher.url), CoreMatchers.is(false));
+    }
+
     private String getUriFromResourceAsString(String path) {
         try {
             return getClass().getResource(path).toURI().toString();
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class GravatarUrlCacheTest {
+
+    GravatarUrlCache cache = new GravatarUrlCache(2);
+
+    @Test
+    public void url_should_be_computed_once_per_address() {
+        String url = cache.getUrl("mrenou@gmail.com");
+
+        assertThat(cache.getUrl("mrenou@gmail.com"), sameInstance(url));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void missing_address_should_share_the_url_of_the_empty_address() {
+        assertThat(cache.getUrl(null), equalTo("http://www.gravatar.com/avatar/d41d8cd98f00b204e9800998ecf8427e?d=mm"));
+        assertThat(cache.getUrl(""), sameInstance(cache.getUrl(null)));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void least_recently_used_address_should_be_evicted_when_cache_is_full() {
+        cache.getUrl("mrenou@gmail.com");
+        cache.getUrl("nicolas.griso@gmail.com");
+        cache.getUrl("mrenou@gmail.com");
+
+        cache.getUrl("nomail@gmail.com");
+
+        assertThat(cache.size(), is(2));
+        cache.getUrl("mrenou@gmail.com");
+        assertThat(cache.getMisses(), is(3L));
+    }
+
+    @Test
+    public void cache_should_stay_bounded_when_read_concurrently() throws InterruptedException {
+        final GravatarUrlCache concurrentCache = new GravatarUrlCache(10);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        concurrentCache.getUrl("user" + ((i + thread) % 30) + "@example.com");
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(concurrentCache.size(), is(10));
+        assertThat(concurrentCache.getHits() + concurrentCache.getMisses(), is(4000L));
+    }
+}
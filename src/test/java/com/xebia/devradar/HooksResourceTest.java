@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.Test;
+
+import javax.servlet.ServletContext;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+public class HooksResourceTest {
+
+    static final String PUSH = "{\"ref\":\"refs/heads/master\",\"repository\":{\"name\":\"dev-radar\",\"owner\":{\"name\":\"xebia-france\"}},"
+            + "\"commits\":[{\"id\":\"41a212ee83ca127e3c8cf465891ab7216a705f59\",\"message\":\"fix the timeline\",\"timestamp\":\"2010-09-23T07:18:32-07:00\","
+            + "\"author\":{\"name\":\"Jane\",\"email\":\"jane@example.com\"},\"committer\":{\"name\":\"John\",\"email\":\"john@example.com\"}}]}";
+
+    static final String SECRET = "s3cr3t";
+
+    static final String TOKEN = "t0k3n";
+
+    static final String NOTIFICATION = "{\"name\":\"dev-radar\",\"url\":\"job/dev-radar/\","
+            + "\"build\":{\"number\":42,\"phase\":\"COMPLETED\",\"status\":\"SUCCESS\",\"full_url\":\"http://fluxx.fr.cr:8080/hudson/job/dev-radar/42/\"}}";
+
+    Pollable github = mock(Pollable.class);
+    Pollable otherGithub = mock(Pollable.class);
+    Pollable hudson = mock(Pollable.class);
+    Pollable otherHudson = mock(Pollable.class);
+    Timeline timeline = new Timeline();
+    Workspace workspace = new Workspace(Arrays.asList(github, otherGithub, hudson, otherHudson), timeline);
+    WorkspaceRegistry workspaceRegistry = mock(WorkspaceRegistry.class);
+    PollScheduler pollScheduler = mock(PollScheduler.class);
+    HooksResource resource = new HooksResource();
+
+    {
+        when(github.getUrl()).thenReturn("http://github.com/api/v2/json/commits/list/xebia-france/dev-radar/master");
+        when(otherGithub.getUrl()).thenReturn("http://github.com/api/v2/json/commits/list/xebia-france/dev-radar/gh-pages");
+        when(hudson.getUrl()).thenReturn("http://fluxx.fr.cr:8080/hudson/job/dev-radar");
+        when(otherHudson.getUrl()).thenReturn("http://other.fr.cr:8080/hudson/job/dev-radar");
+        when(workspaceRegistry.getWorkspaces()).thenReturn(Collections.singletonList(workspace));
+        when(workspaceRegistry.getSources()).thenReturn(WorkspaceSources.DEFAULT);
+        when(workspaceRegistry.getSourceRegistry()).thenReturn(new SourceRegistry(60, TimeUnit.SECONDS));
+        resource.servletContext = mock(ServletContext.class);
+        when(resource.servletContext.getAttribute(DevRadarContextListener.WORKSPACE_REGISTRY_ATTRIBUTE)).thenReturn(workspaceRegistry);
+        when(resource.servletContext.getAttribute(DevRadarContextListener.POLL_SCHEDULER_ATTRIBUTE)).thenReturn(pollScheduler);
+        when(resource.servletContext.getInitParameter(DevRadarContextListener.GITHUB_HOOK_SECRET_PARAM)).thenReturn(SECRET);
+        when(resource.servletContext.getInitParameter(DevRadarContextListener.HUDSON_HOOK_TOKEN_PARAM)).thenReturn(TOKEN);
+    }
+
+    @Test
+    public void pushed_commits_should_be_published_like_fetched_ones() throws UnsupportedEncodingException {
+        Response response = push(PUSH);
+
+        assertThat(response.getStatus(), is(204));
+        assertThat(timeline.getEvents().size(), is(1));
+        Event event = timeline.getEvents().get(0);
+        assertThat(event.id, equalTo("github:41a212ee83ca127e3c8cf465891ab7216a705f59"));
+        assertThat(event.author, equalTo("John"));
+        assertThat(event.message, equalTo("fix the timeline"));
+        assertThat(event.timestamp, equalTo(1285251512000L));
+        verify(github, never()).fetch();
+        verify(otherGithub, never()).fetch();
+    }
+
+    @Test
+    public void pushed_form_should_be_published_when_signed() throws UnsupportedEncodingException {
+        byte[] form = ("payload=" + URLEncoder.encode(PUSH, "UTF-8")).getBytes("UTF-8");
+
+        resource.pushFromGitHubForm("sha1=" + HooksResource.sign(SECRET, form), form);
+
+        assertThat(timeline.getEvents().size(), is(1));
+    }
+
+    @Test
+    public void push_of_another_branch_should_be_ignored() throws UnsupportedEncodingException {
+        push(PUSH.replace("refs/heads/master", "refs/heads/topic"));
+
+        assertThat(timeline.getEvents().isEmpty(), is(true));
+    }
+
+    @Test
+    public void push_of_a_branch_ending_like_another_should_be_ignored() throws UnsupportedEncodingException {
+        push(PUSH.replace("\"name\":\"xebia-france\"", "\"name\":\"france\"").replace("\"name\":\"dev-radar\"", "\"name\":\"xebia-france/dev-radar\""));
+
+        assertThat(timeline.getEvents().isEmpty(), is(true));
+    }
+
+    @Test
+    public void push_should_be_matched_on_the_configured_github_url() throws UnsupportedEncodingException {
+        String gitHubUrl = "https://GitHub.example.com/api/v2/json/commits/list/xebia-france/dev-radar/master";
+        when(workspaceRegistry.getSources()).thenReturn(new WorkspaceSources("http://hudson", "job", gitHubUrl));
+        when(github.getUrl()).thenReturn(gitHubUrl + "/");
+
+        push(PUSH);
+
+        assertThat(timeline.getEvents().size(), is(1));
+    }
+
+    @Test
+    public void push_with_a_wrong_signature_should_be_forbidden() throws UnsupportedEncodingException {
+        try {
+            resource.pushFromGitHub("sha1=" + HooksResource.sign("guess", PUSH.getBytes("UTF-8")), PUSH.getBytes("UTF-8"));
+            fail();
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus(), is(403));
+        }
+        assertThat(timeline.getEvents().isEmpty(), is(true));
+    }
+
+    @Test
+    public void push_should_be_forbidden_without_a_secret() throws UnsupportedEncodingException {
+        when(resource.servletContext.getInitParameter(DevRadarContextListener.GITHUB_HOOK_SECRET_PARAM)).thenReturn("");
+        try {
+            push(PUSH);
+            fail();
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus(), is(403));
+        }
+    }
+
+    @Test
+    public void invalid_payload_should_be_rejected() throws UnsupportedEncodingException {
+        try {
+            push("{\"ref\":");
+            fail();
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus(), is(400));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void completed_build_should_make_the_workspaces_fetch_the_job_now() {
+        Response response = resource.notifyFromHudson(TOKEN, NOTIFICATION);
+
+        assertThat(response.getStatus(), is(202));
+        verify(pollScheduler).pollNow(Collections.singletonMap(workspace, Collections.singletonList(hudson)));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void started_build_should_be_ignored() {
+        resource.notifyFromHudson(TOKEN, NOTIFICATION.replace("COMPLETED", "STARTED"));
+
+        verify(pollScheduler, never()).pollNow(anyMap());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void notification_with_a_wrong_token_should_be_forbidden() {
+        try {
+            resource.notifyFromHudson("guess", NOTIFICATION);
+            fail();
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus(), is(403));
+        }
+        verify(pollScheduler, never()).pollNow(anyMap());
+    }
+
+    private Response push(String payload) throws UnsupportedEncodingException {
+        byte[] body = payload.getBytes("UTF-8");
+        return resource.pushFromGitHub("sha1=" + HooksResource.sign(SECRET, body), body);
+    }
+}
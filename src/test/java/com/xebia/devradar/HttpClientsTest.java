@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import com.sun.jersey.client.apache.ApacheHttpClient;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class HttpClientsTest {
+
+    @After
+    public void shutdown() {
+        HttpClients.shutdown();
+    }
+
+    @Test
+    public void shared_client_should_be_created_once() {
+        assertThat(HttpClients.getSharedClient(), sameInstance(HttpClients.getSharedClient()));
+    }
+
+    @Test
+    public void shared_client_should_be_replaced_when_configured() {
+        ApacheHttpClient client = (ApacheHttpClient) HttpClients.getSharedClient();
+
+        HttpClients.configure(2, 10, 1000, 3000);
+
+        ApacheHttpClient configuredClient = (ApacheHttpClient) HttpClients.getSharedClient();
+        assertThat(configuredClient, not(sameInstance(client)));
+        HttpConnectionManagerParams params = configuredClient.getClientHandler().getHttpClient().getHttpConnectionManager().getParams();
+        assertThat(params.getDefaultMaxConnectionsPerHost(), is(2));
+        assertThat(params.getMaxTotalConnections(), is(10));
+        assertThat(params.getConnectionTimeout(), is(1000));
+        assertThat(params.getSoTimeout(), is(3000));
+    }
+}
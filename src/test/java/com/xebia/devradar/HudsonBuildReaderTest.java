@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class HudsonBuildReaderTest {
+
+    private static final String JSON_PATH = "/hudson/json/";
+
+    @Test
+    public void builds_should_be_read_one_at_a_time() throws Exception {
+        HudsonBuildReader reader = HudsonBuildReader.readBuilds(open("hudson-rest-stream-3-builds-1-building.json"));
+
+        HudsonBuildReader.Build build = reader.next();
+        assertThat(build.number, is(43));
+        assertThat(build.building, is(true));
+
+        build = reader.next();
+        assertThat(build.number, is(42));
+        assertThat(build.building, is(false));
+        assertThat(build.result, equalTo("FAILURE"));
+        assertThat(build.userNames.contains("mrenou"), is(true));
+
+        build = reader.next();
+        assertThat(build.number, is(41));
+        assertThat(build.result, equalTo("SUCCESS"));
+
+        assertThat(reader.next(), nullValue());
+        reader.close();
+    }
+
+    @Test
+    public void building_build_should_not_keep_its_users() throws Exception {
+        HudsonBuildReader reader = HudsonBuildReader.readBuilds(open("hudson-rest-stream-2-builds-1-building.json"));
+
+        assertThat(reader.next().userNames.size(), is(1));
+        HudsonBuildReader.Build build = reader.next();
+        assertThat(build.building, is(true));
+        assertThat(build.userNames.size(), is(0));
+        reader.close();
+    }
+
+    @Test
+    public void building_build_should_be_skipped_when_building_comes_first() throws Exception {
+        String json = "{\"builds\":[{\"building\":true,\"number\":43,\"actions\":[{\"causes\":[{\"userName\":\"mrenou\"}]}],\"culprits\":[{\"fullName\":\"mrenou\"}]},"
+                + "{\"building\":false,\"number\":42,\"result\":\"FAILURE\",\"culprits\":[{\"fullName\":\"mrenou\"}]}]}";
+        HudsonBuildReader reader = HudsonBuildReader.readBuilds(new ByteArrayInputStream(json.getBytes("UTF-8")));
+
+        HudsonBuildReader.Build build = reader.next();
+        assertThat(build.number, is(43));
+        assertThat(build.userNames.size(), is(0));
+        build = reader.next();
+        assertThat(build.number, is(42));
+        assertThat(build.userNames.contains("mrenou"), is(true));
+        reader.close();
+    }
+
+    @Test
+    public void single_build_should_be_read() throws Exception {
+        HudsonBuildReader reader = HudsonBuildReader.readBuild(open("hudson-rest-stream-build-40.json"));
+
+        HudsonBuildReader.Build build = reader.next();
+        assertThat(build.number, is(40));
+        assertThat(build.result, equalTo("UNSTABLE"));
+        assertThat(build.timestamp, is(1295779740333L));
+        assertThat(build.userNames.contains("mrenou"), is(true));
+        assertThat(reader.next(), nullValue());
+        reader.close();
+    }
+
+    @Test(expected = ClientHandlerException.class)
+    public void empty_stream_should_throw_exception() {
+        HudsonBuildReader.readBuilds(new ByteArrayInputStream(new byte[0]));
+    }
+
+    @Test
+    public void streamed_builds_should_match_bound_builds_on_a_long_history() throws Exception {
+        String json = scale(read("hudson-rest-stream-n-builds.json"), 1000);
+
+        HudsonBuildsDTO hudsonBuildsDTO = new ObjectMapper().readValue(json, HudsonBuildsDTO.class);
+
+        HudsonBuildReader reader = HudsonBuildReader.readBuilds(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        int count = 0;
+        for (HudsonBuildReader.Build build = reader.next(); build != null; build = reader.next()) {
+            HudsonBuildDTO hudsonBuildDTO = hudsonBuildsDTO.builds.get(count++);
+            assertThat(build.building, is(hudsonBuildDTO.building));
+            if (!build.building) {
+                assertThat(build.result, equalTo(hudsonBuildDTO.result));
+                assertThat(build.timestamp, equalTo(hudsonBuildDTO.timestamp));
+                assertThat(build.userNames, equalTo(getUserNames(hudsonBuildDTO)));
+            }
+        }
+        reader.close();
+        assertThat(count, is(hudsonBuildsDTO.builds.size()));
+    }
+
+    /**
+     * Repeat the builds of a job stream <code>times</code> times.
+     */
+    private String scale(String json, int times) {
+        String builds = json.substring(json.indexOf('[') + 1, json.lastIndexOf(']'));
+        StringBuilder scaled = new StringBuilder("{\"builds\":[");
+        for (int i = 0; i < times; i++) {
+            if (i > 0) {
+                scaled.append(',');
+            }
+            scaled.append(builds);
+        }
+        return scaled.append("]}").toString();
+    }
+
+    private InputStream open(String fileName) {
+        return getClass().getResourceAsStream(JSON_PATH + fileName);
+    }
+
+    private String read(String fileName) throws IOException {
+        Reader reader = new InputStreamReader(open(fileName), "UTF-8");
+        try {
+            StringBuilder json = new StringBuilder();
+            char[] buffer = new char[4096];
+            for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                json.append(buffer, 0, read);
+            }
+            return json.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private Set<String> getUserNames(HudsonBuildDTO hudsonBuildDTO) {
+        Set<String> userNames = new LinkedHashSet<String>();
+        for (HudsonUserDTO hudsonUserDTO : hudsonBuildDTO.culprits) {
+            if (StringUtils.isNotBlank(hudsonUserDTO.fullName)) {
+                userNames.add(hudsonUserDTO.fullName);
+            }
+        }
+        for (HudsonActionDTO hudsonActionDTO : hudsonBuildDTO.actions) {
+            if (hudsonActionDTO.causes != null) {
+                for (HudsonCauseDTO hudsonCauseDTO : hudsonActionDTO.causes) {
+                    if (StringUtils.isNotBlank(hudsonCauseDTO.userName)) {
+                        userNames.add(hudsonCauseDTO.userName);
+                    }
+                }
+            }
+        }
+        return userNames;
+    }
+
+    /*
+     * Object binding of the builds, as read before streaming
+     */
+
+    public static class HudsonBuildsDTO {
+        public List<HudsonBuildDTO> builds = new ArrayList<HudsonBuildDTO>();
+    }
+
+    public static class HudsonBuildDTO {
+        public Integer number;
+        public boolean building;
+        public String result;
+        public Long timestamp;
+        public List<HudsonUserDTO> culprits = new ArrayList<HudsonUserDTO>();
+        public List<HudsonActionDTO> actions = new ArrayList<HudsonActionDTO>();
+    }
+
+    public static class HudsonActionDTO {
+        public List<HudsonCauseDTO> causes;
+    }
+
+    public static class HudsonCauseDTO {
+        public String userName;
+    }
+
+    public static class HudsonUserDTO {
+        public String fullName;
+        public String absoluteUrl;
+    }
+}
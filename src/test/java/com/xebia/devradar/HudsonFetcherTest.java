@@ -21,29 +21,40 @@ package com.xebia.devradar;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientHandler;
 import com.sun.jersey.api.client.ClientHandlerException;
-import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.core.header.InBoundHeaders;
 import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class HudsonFetcherTest {
 
     private HudsonFetcher fetcher = new HudsonFetcher("http://fluxx.fr.cr:8080/hudson", "dev-radar") {
         @Override
-        Client buildJerseyClient(ClientConfig clientConfig) {
+        Client buildJerseyClient() {
             ClientHandler clientHandler = FileClientHandlerBuilder.newFileClientHandler()
                     .withFile("http://fluxx.fr.cr:8080/hudson/user/Nicolas%20Griso/api/json?tree=property%5Baddress%5D", "/hudson/json/hudson-rest-stream-user-ngriso.json")
                     .withFile("http://fluxx.fr.cr:8080/hudson/user/mrenou/api/json?tree=property%5Baddress%5D", "/hudson/json/hudson-rest-stream-user-mrenou.json")
                     .withFile("http://fluxx.fr.cr:8080/hudson/user/nomail/api/json?tree=property%5Baddress%5D", "/hudson/json/hudson-rest-stream-user-nomail.json")
+                    .withFile("http://fluxx.fr.cr:8080/hudson/job/dev-radar/api/json?tree=builds%5Bbuilding,number,result,timestamp,actions%5Bcauses%5BuserName%5D%5D,culprits%5BfullName,absoluteUrl%5D%5D%7B0,10%7D", "/hudson/json/hudson-rest-stream-3-builds-1-building.json")
+                    .withFile("http://fluxx.fr.cr:8080/hudson/job/dev-radar/40/api/json?tree=building,number,result,timestamp,actions%5Bcauses%5BuserName%5D%5D,culprits%5BfullName,absoluteUrl%5D", "/hudson/json/hudson-rest-stream-build-40.json")
                     .withHeader("Content-Type", "application/javascript; charset=utf-8")
                     .create();
-            return new Client(clientHandler, clientConfig);
+            return new Client(clientHandler);
         }
     };
 
@@ -107,6 +118,7 @@ public class HudsonFetcherTest {
 
         assertThat(events.size(), CoreMatchers.is(1));
         Event event = events.iterator().next();
+        assertThat(event.id, equalTo("hudson:http://fluxx.fr.cr:8080/hudson/job/dev-radar#1295779740666@anonymous"));
         assertThat(event.timestamp, equalTo(1295779740666L));
         assertThat(event.author, equalTo("anonymous"));
         assertThat(event.message, equalTo("Build SUCCESS"));
@@ -183,12 +195,14 @@ public class HudsonFetcherTest {
         assertThat(events.size(), CoreMatchers.is(2));
 
         Event event1 = events.get(0);
+        assertThat(event1.id, equalTo("hudson:http://fluxx.fr.cr:8080/hudson/job/dev-radar#41@Nicolas Griso"));
         assertThat(event1.timestamp, equalTo(1295779740666L));
         assertThat(event1.author, equalTo("Nicolas Griso"));
         assertThat(event1.message, equalTo("Build SUCCESS"));
         assertThat(event1.gravatarUrl, equalTo("http://www.gravatar.com/avatar/4a89258a4759e47dab3266e9b9d76065?d=mm"));
 
         Event event2 = events.get(1);
+        assertThat(event2.id, equalTo("hudson:http://fluxx.fr.cr:8080/hudson/job/dev-radar#42@mrenou"));
         assertThat(event2.timestamp, equalTo(1295779740999L));
         assertThat(event2.author, equalTo("mrenou"));
         assertThat(event2.message, equalTo("Build FAILURE"));
@@ -252,6 +266,101 @@ public class HudsonFetcherTest {
         assertThat(event2.gravatarUrl, equalTo("http://www.gravatar.com/avatar/8c92fcdb7c7abc1a50732a93bc361b5e?d=mm"));
     }
 
+    @Test
+    public void should_not_request_mail_of_a_cached_user() {
+        fetcher.userCache = new HudsonUserCache(10, 1, TimeUnit.HOURS);
+        fetcher.userCache.put("Nicolas Griso", "mrenou@gmail.com");
+        fetcher.url = getUriFromResourceAsString("/hudson/json/hudson-rest-stream-1-build-1-user.json");
+
+        Event event = fetcher.fetch().iterator().next();
+
+        assertThat(event.gravatarUrl, equalTo("http://www.gravatar.com/avatar/8c92fcdb7c7abc1a50732a93bc361b5e?d=mm"));
+        assertThat(fetcher.userCache.getHits(), equalTo(1L));
+    }
+
+    @Test
+    public void should_cache_mail_of_requested_user() {
+        fetcher.userCache = new HudsonUserCache(10, 1, TimeUnit.HOURS);
+        fetcher.url = getUriFromResourceAsString("/hudson/json/hudson-rest-stream-1-build-1-user.json");
+
+        fetcher.fetch();
+        fetcher.fetch();
+
+        assertThat(fetcher.userCache.get("Nicolas Griso").mail, equalTo("nicolas.griso@gmail.com"));
+        assertThat(fetcher.userCache.getMisses(), equalTo(1L));
+    }
+
+    @Test
+    public void should_remember_last_completed_build() {
+        fetcher.url = getUriFromResourceAsString("/hudson/json/hudson-rest-stream-2-builds.json");
+
+        fetcher.fetch();
+
+        assertThat(fetcher.lastCompletedNumber, equalTo(42));
+        assertThat(fetcher.buildingNumbers.isEmpty(), CoreMatchers.is(true));
+    }
+
+    @Test
+    public void should_not_remember_builds_of_a_failed_fetch() {
+        fetcher.url = getUriFromResourceAsString("/hudson/json/hudson-rest-stream-2-builds.json");
+        fetcher.userCache = mock(HudsonUserCache.class);
+        when(fetcher.userCache.get("mrenou")).thenThrow(new IllegalStateException("user lookup failed"));
+
+        try {
+            fetcher.fetch();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertThat(fetcher.lastCompletedNumber, nullValue());
+        assertThat(fetcher.buildingNumbers.isEmpty(), CoreMatchers.is(true));
+    }
+
+    @Test
+    public void should_only_return_builds_completed_since_last_fetch() {
+        fetcher.lastCompletedNumber = 41;
+        fetcher.buildingNumbers.add(40);
+
+        List<Event> events  = new ArrayList<Event>(fetcher.fetch());
+        Collections.sort(events, new Comparator<Event>() {
+            @Override
+            public int compare(Event event1, Event event2) {
+                return event1.id.compareTo(event2.id);
+            }
+        });
+
+        assertThat(events.size(), CoreMatchers.is(2));
+        assertThat(events.get(0).id, equalTo("hudson:http://fluxx.fr.cr:8080/hudson/job/dev-radar#40@mrenou"));
+        assertThat(events.get(0).level, equalTo(EventLevel.WARNING));
+        assertThat(events.get(1).id, equalTo("hudson:http://fluxx.fr.cr:8080/hudson/job/dev-radar#42@mrenou"));
+        assertThat(events.get(1).level, equalTo(EventLevel.ERROR));
+        assertThat(fetcher.lastCompletedNumber, equalTo(42));
+        assertThat(fetcher.buildingNumbers, equalTo(Collections.singleton(43)));
+    }
+
+    @Test
+    public void should_resume_after_the_builds_of_a_previous_run() {
+        fetcher.resume(Arrays.asList(
+                new Event("hudson:http://fluxx.fr.cr:8080/hudson/job/dev-radar#39@mrenou", 1, "mrenou", "Build SUCCESS", null, EventLevel.INFO),
+                new Event("hudson:http://fluxx.fr.cr:8080/hudson/job/dev-radar#41@mrenou", 2, "mrenou", "Build SUCCESS", null, EventLevel.INFO),
+                new Event("hudson:http://fluxx.fr.cr:8080/hudson/job/other#50@mrenou", 3, "mrenou", "Build SUCCESS", null, EventLevel.INFO),
+                new Event("github:8d8be6718e3e32a68b08daf25e4aa8df9bc35678", 4, "mrenou", "commit", null, EventLevel.UNDIFINED)));
+
+        assertThat(fetcher.lastCompletedNumber, equalTo(41));
+        assertThat(fetcher.buildingNumbers, equalTo(Collections.singleton(40)));
+        assertThat(fetcher.fetch().size(), CoreMatchers.is(2));
+    }
+
+    @Test
+    public void should_not_resume_once_fetched() {
+        fetcher.url = getUriFromResourceAsString("/hudson/json/hudson-rest-stream-2-builds.json");
+        fetcher.fetch();
+
+        fetcher.resume(Arrays.asList(new Event("hudson:http://fluxx.fr.cr:8080/hudson/job/dev-radar#50@mrenou", 1, "mrenou", "Build SUCCESS", null, EventLevel.INFO)));
+
+        assertThat(fetcher.lastCompletedNumber, equalTo(42));
+    }
 
     @Test
     public void should_return_n_events() {
@@ -263,6 +372,55 @@ public class HudsonFetcherTest {
 
     }
 
+    @Test
+    public void error_status_should_be_thrown_with_its_entity() {
+        final ClosableInputStream entity = new ClosableInputStream("job not found");
+        HudsonFetcher failingFetcher = new HudsonFetcher("http://fluxx.fr.cr:8080/hudson", "dev-radar") {
+            @Override
+            Client buildJerseyClient() {
+                return new Client(new ClientHandler() {
+                    @Override
+                    public ClientResponse handle(ClientRequest cr) {
+                        return new ClientResponse(500, new InBoundHeaders(), entity, null);
+                    }
+                });
+            }
+        };
+
+        try {
+            failingFetcher.fetch();
+            fail();
+        } catch (UniformInterfaceException e) {
+            assertThat(e.getResponse().getStatus(), CoreMatchers.is(500));
+        }
+        assertThat(entity.closed, CoreMatchers.is(true));
+    }
+
+    /**
+     * Fails to be read once closed, as the stream of a pooled connection.
+     */
+    static class ClosableInputStream extends ByteArrayInputStream {
+
+        boolean closed;
+
+        ClosableInputStream(String content) {
+            super(content.getBytes());
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            if (closed) {
+                throw new IllegalStateException("closed");
+            }
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+        }
+    }
+
     private String getUriFromResourceAsString(String path) {
         try {
             return getClass().getResource(path).toURI().toString();
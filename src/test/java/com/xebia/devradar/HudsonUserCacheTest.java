@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class HudsonUserCacheTest {
+
+    long now = 0;
+
+    HudsonUserCache cache = new HudsonUserCache(2, 10, TimeUnit.MINUTES) {
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    };
+
+    @Test
+    public void cached_mail_should_be_returned_until_it_expires() {
+        cache.put("Nicolas Griso", "nicolas.griso@gmail.com");
+
+        now = TimeUnit.MINUTES.toMillis(9);
+        assertThat(cache.get("Nicolas Griso").mail, equalTo("nicolas.griso@gmail.com"));
+
+        now = TimeUnit.MINUTES.toMillis(10);
+        assertThat(cache.get("Nicolas Griso"), nullValue());
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void user_without_mail_should_be_cached() {
+        cache.put("nomail", null);
+
+        HudsonUserCache.CachedUser cachedUser = cache.get("nomail");
+
+        assertThat(cachedUser, notNullValue());
+        assertThat(cachedUser.mail, nullValue());
+    }
+
+    @Test
+    public void least_recently_used_user_should_be_evicted_when_cache_is_full() {
+        cache.put("Nicolas Griso", "nicolas.griso@gmail.com");
+        cache.put("mrenou", "mrenou@gmail.com");
+        cache.get("Nicolas Griso");
+
+        cache.put("nomail", null);
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get("mrenou"), nullValue());
+        assertThat(cache.get("Nicolas Griso"), notNullValue());
+    }
+
+    @Test
+    public void hits_and_misses_should_be_counted() {
+        cache.put("mrenou", "mrenou@gmail.com");
+
+        cache.get("mrenou");
+        cache.get("mrenou");
+        cache.get("Nicolas Griso");
+
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getMisses(), is(1L));
+    }
+
+    @Test
+    public void cache_should_be_shared_by_fetchers_of_the_same_hudson() {
+        assertThat(HudsonUserCache.forHudson("http://fluxx.fr.cr:8080/hudson"), sameInstance(HudsonUserCache.forHudson("http://fluxx.fr.cr:8080/hudson")));
+        assertThat(HudsonUserCache.forHudson("http://fluxx.fr.cr:8080/hudson"), not(sameInstance(HudsonUserCache.forHudson("http://ci.xebia.fr/hudson"))));
+    }
+}
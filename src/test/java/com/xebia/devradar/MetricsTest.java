@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class MetricsTest {
+
+    @Test
+    public void counter_should_be_looked_up_once_by_name_and_label() {
+        Metrics.Counter counter = Metrics.counter("test_lookup_total", "Lookups", "source", "github");
+
+        counter.increment();
+        counter.add(2);
+
+        assertThat(Metrics.counter("test_lookup_total", "Lookups", "source", "github"), sameInstance(counter));
+        assertThat(counter.get(), is(3L));
+        assertThat(Metrics.counter("test_lookup_total", "Lookups", "source", "hudson").get(), is(0L));
+    }
+
+    @Test
+    public void counters_should_be_written_in_prometheus_text_format() throws Exception {
+        Metrics.counter("test_written_total", "Written \"things\"", "source", "http://host/\"quoted\"").add(4);
+        Metrics.counter("test_written_total", "Written \"things\"", "source", "http://other").increment();
+
+        String metrics = write();
+
+        assertThat(metrics, containsString("# HELP test_written_total Written \"things\"\n# TYPE test_written_total counter\n"
+                + "test_written_total{source=\"http://host/\\\"quoted\\\"\"} 4\n"
+                + "test_written_total{source=\"http://other\"} 1\n"));
+    }
+
+    @Test
+    public void histogram_should_write_cumulative_buckets() throws Exception {
+        Metrics.Histogram histogram = Metrics.histogram("test_latency_seconds", "Latency");
+
+        histogram.observe(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.observe(TimeUnit.MILLISECONDS.toNanos(40));
+        histogram.observe(TimeUnit.SECONDS.toNanos(60));
+
+        String metrics = write();
+        assertThat(histogram.getCount(), is(3L));
+        assertThat(metrics, containsString("# TYPE test_latency_seconds histogram\n"));
+        assertThat(metrics, containsString("test_latency_seconds_bucket{le=\"0.005\"} 1\n"));
+        assertThat(metrics, containsString("test_latency_seconds_bucket{le=\"0.025\"} 1\n"));
+        assertThat(metrics, containsString("test_latency_seconds_bucket{le=\"0.05\"} 2\n"));
+        assertThat(metrics, containsString("test_latency_seconds_bucket{le=\"30.0\"} 2\n"));
+        assertThat(metrics, containsString("test_latency_seconds_bucket{le=\"+Inf\"} 3\n"));
+        assertThat(metrics, containsString("test_latency_seconds_sum 60.043\n"));
+        assertThat(metrics, containsString("test_latency_seconds_count 3\n"));
+    }
+
+    @Test
+    public void value_should_be_read_when_written() throws Exception {
+        final long[] size = {1};
+        Metrics.gauge("test_cache_size", "Size", new Metrics.Value() {
+            @Override
+            public long get() {
+                return size[0];
+            }
+        });
+        size[0] = 5;
+
+        assertThat(write(), containsString("# TYPE test_cache_size gauge\ntest_cache_size 5\n"));
+    }
+
+    private String write() throws Exception {
+        StringWriter writer = new StringWriter();
+        Metrics.write(writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+public class PollSchedulerTest {
+
+    PollScheduler pollScheduler = new PollScheduler(1);
+    Workspace workspace = mock(Workspace.class);
+
+    @After
+    public void shutdown() {
+        pollScheduler.shutdown();
+    }
+
+    @Test
+    public void workspace_should_be_polled_in_background_once_scheduled() {
+
+        pollScheduler.schedule(workspace, 10, TimeUnit.MILLISECONDS);
+
+        verify(workspace, timeout(1000).atLeast(2)).poll();
+    }
+
+    @Test
+    public void workspace_should_still_be_polled_after_a_failed_poll() {
+        doThrow(new IllegalStateException("hudson is down")).doNothing().when(workspace).poll();
+
+        pollScheduler.schedule(workspace, 10, TimeUnit.MILLISECONDS);
+
+        verify(workspace, timeout(1000).atLeast(2)).poll();
+    }
+
+    @Test
+    public void termination_should_wait_for_the_poll_in_progress() throws Exception {
+        final CountDownLatch pollStarted = new CountDownLatch(1);
+        final AtomicBoolean pollDone = new AtomicBoolean();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                pollStarted.countDown();
+                // a poll which does not stop when interrupted, like a blocking read
+                long end = System.currentTimeMillis() + 100;
+                while (System.currentTimeMillis() < end) {
+                    Thread.yield();
+                }
+                pollDone.set(true);
+                return null;
+            }
+        }).when(workspace).poll();
+        pollScheduler.schedule(workspace, 1, TimeUnit.HOURS);
+        pollStarted.await(1, TimeUnit.SECONDS);
+
+        pollScheduler.shutdown();
+
+        assertThat(pollScheduler.awaitTermination(1, TimeUnit.SECONDS), is(true));
+        assertThat(pollDone.get(), is(true));
+    }
+
+    @Test
+    public void workspace_should_not_be_polled_anymore_once_cancelled() {
+        pollScheduler.schedule(workspace, 1, TimeUnit.HOURS);
+        verify(workspace, timeout(1000)).poll();
+
+        pollScheduler.cancel(workspace);
+
+        assertThat(pollScheduler.scheduledPolls.containsKey(workspace), is(false));
+    }
+}
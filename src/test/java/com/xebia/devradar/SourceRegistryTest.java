@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+public class SourceRegistryTest {
+
+    static final String HUDSON_URL = "http://fluxx.fr.cr:8080/hudson/job/dev-radar";
+
+    SourceRegistry sourceRegistry = new SourceRegistry(1, TimeUnit.HOURS);
+
+    Pollable hudsonFetcher = fetcher(HUDSON_URL);
+
+    @Test
+    public void workspaces_watching_the_same_source_should_share_its_fetches() {
+        List<Event> events = TimelineTest.buildEvents(3);
+        when(hudsonFetcher.fetch()).thenReturn(new HashSet<Event>(events));
+        Pollable otherHudsonFetcher = fetcher("HTTP://Fluxx.fr.cr:8080/hudson/job/dev-radar/");
+
+        Pollable subscription = sourceRegistry.subscribe(hudsonFetcher);
+        Pollable otherSubscription = sourceRegistry.subscribe(otherHudsonFetcher);
+
+        assertThat(subscription.fetch(), equalTo(set(events)));
+        assertThat(otherSubscription.fetch(), equalTo(set(events)));
+        assertThat(sourceRegistry.size(), is(1));
+        verify(hudsonFetcher, times(1)).fetch();
+        verify(otherHudsonFetcher, never()).fetch();
+    }
+
+    @Test
+    public void subscription_should_read_the_events_fetched_for_the_others_once() {
+        List<Event> events = TimelineTest.buildEvents(5);
+        when(hudsonFetcher.fetch()).thenReturn(new HashSet<Event>(events.subList(0, 2))).thenReturn(new HashSet<Event>(events.subList(2, 5)));
+        Pollable subscription = sourceRegistry.subscribe(hudsonFetcher);
+        Pollable otherSubscription = sourceRegistry.subscribe(fetcher(HUDSON_URL));
+
+        subscription.fetch();
+        sourceRegistry.expire(HUDSON_URL);
+        subscription.fetch();
+
+        assertThat(otherSubscription.fetch(), equalTo(set(events)));
+        assertTrue(otherSubscription.fetch().isEmpty());
+        verify(hudsonFetcher, times(2)).fetch();
+    }
+
+    @Test
+    public void failure_should_be_thrown_once_until_the_next_interval() {
+        when(hudsonFetcher.fetch()).thenThrow(new IllegalStateException("down"));
+        Pollable subscription = sourceRegistry.subscribe(hudsonFetcher);
+        Pollable otherSubscription = sourceRegistry.subscribe(fetcher(HUDSON_URL));
+
+        try {
+            subscription.fetch();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(otherSubscription.fetch().isEmpty());
+        verify(hudsonFetcher, times(1)).fetch();
+    }
+
+    @Test
+    public void events_fetched_again_should_be_read_once() {
+        List<Event> events = TimelineTest.buildEvents(3);
+        when(hudsonFetcher.fetch()).thenReturn(set(events.subList(0, 2))).thenReturn(set(events));
+        Pollable subscription = sourceRegistry.subscribe(hudsonFetcher);
+
+        subscription.fetch();
+        sourceRegistry.expire(HUDSON_URL);
+
+        assertThat(subscription.fetch(), equalTo(set(events.subList(2, 3))));
+    }
+
+    @Test
+    public void journal_should_keep_the_events_unread_and_the_last_ones() {
+        List<Event> events = TimelineTest.buildEvents(SharedSource.HISTORY_SIZE + 50);
+        when(hudsonFetcher.fetch()).thenReturn(set(events));
+        SharedSource.Subscription subscription = (SharedSource.Subscription) sourceRegistry.subscribe(hudsonFetcher);
+        Pollable otherSubscription = sourceRegistry.subscribe(fetcher(HUDSON_URL));
+        SharedSource sharedSource = subscription.getSharedSource();
+
+        subscription.fetch();
+        assertThat(sharedSource.getJournalSize(), is(SharedSource.HISTORY_SIZE + 50));
+        assertThat(otherSubscription.fetch().size(), is(SharedSource.HISTORY_SIZE + 50));
+        assertThat(sharedSource.getJournalSize(), is(SharedSource.HISTORY_SIZE));
+
+        Pollable laterSubscription = sourceRegistry.subscribe(fetcher(HUDSON_URL));
+        assertThat(laterSubscription.fetch(), equalTo(set(newest(events, SharedSource.HISTORY_SIZE))));
+    }
+
+    @Test
+    public void source_should_be_forgotten_with_its_last_subscription() {
+        Pollable subscription = sourceRegistry.subscribe(hudsonFetcher);
+        Pollable otherSubscription = sourceRegistry.subscribe(fetcher(HUDSON_URL));
+
+        sourceRegistry.unsubscribe(Arrays.asList(subscription));
+        assertThat(sourceRegistry.size(), is(1));
+        sourceRegistry.unsubscribe(Arrays.asList(otherSubscription));
+        assertThat(sourceRegistry.size(), is(0));
+    }
+
+    @Test
+    public void urls_should_be_canonical() {
+        assertThat(SourceRegistry.canonicalUrl("HTTP://GitHub.com:80/api/v2/json/commits/list/xebia-france/dev-radar/master/"),
+                equalTo("http://github.com/api/v2/json/commits/list/xebia-france/dev-radar/master"));
+        assertThat(SourceRegistry.canonicalUrl("https://ci.example.com:8443/job/a/../dev-radar?depth=1"),
+                equalTo("https://ci.example.com:8443/job/dev-radar?depth=1"));
+    }
+
+    private List<Event> newest(List<Event> events, int count) {
+        List<Event> sortedEvents = new ArrayList<Event>(events);
+        Collections.sort(sortedEvents, Collections.reverseOrder(Timeline.OLDEST_FIRST));
+        return sortedEvents.subList(0, count);
+    }
+
+    private Set<Event> set(List<Event> events) {
+        return new HashSet<Event>(events);
+    }
+
+    private Pollable fetcher(String url) {
+        Pollable fetcher = mock(Pollable.class);
+        when(fetcher.getUrl()).thenReturn(url);
+        return fetcher;
+    }
+}
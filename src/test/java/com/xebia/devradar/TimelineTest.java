@@ -6,36 +6,42 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 public class TimelineTest {
 
+    private static final AtomicInteger EVENT_IDS = new AtomicInteger();
+
     Timeline timeline = new Timeline();
 
     @Test
     public void events_should_be_empty_when_update_with_an_empty_collection() {
         timeline.update(Collections.<Event>emptyList());
-        assertTrue(timeline.events.isEmpty());
+        assertTrue(timeline.getEvents().isEmpty());
     }
 
     @Test
     public void events_size_should_be_equal_to_max_size_after_update() {
         final List<Event> fetchedEvents = buildEvents(Timeline.MAX_SIZE + 3);
         timeline.update(fetchedEvents);
-        assertThat(timeline.events.size(), equalTo(Timeline.MAX_SIZE));
+        assertThat(timeline.getEvents().size(), equalTo(Timeline.MAX_SIZE));
     }
 
     @Test
     public void events_size_should_be_less_or_equal_to_max_size_after_update() {
         final List<Event> fetchedEvents = buildEvents(Timeline.MAX_SIZE - 3);
         timeline.update(fetchedEvents);
-        assertTrue(timeline.events.containsAll(fetchedEvents));
-        assertThat(timeline.events.size(), is(lessThanOrEqualTo(Timeline.MAX_SIZE)));
+        assertTrue(timeline.getEvents().containsAll(fetchedEvents));
+        assertThat(timeline.getEvents().size(), is(lessThanOrEqualTo(Timeline.MAX_SIZE)));
     }
 
     @Test
@@ -47,15 +53,133 @@ public class TimelineTest {
 
         timeline.update(fetchedEvents);
 
-        assertThat(timeline.events.get(0).timestamp, equalTo(3L));
-        assertThat(timeline.events.get(1).timestamp, equalTo(2L));
-        assertThat(timeline.events.get(2).timestamp, equalTo(1L));
+        assertThat(timeline.getEvents().get(0).timestamp, equalTo(3L));
+        assertThat(timeline.getEvents().get(1).timestamp, equalTo(2L));
+        assertThat(timeline.getEvents().get(2).timestamp, equalTo(1L));
+    }
+
+    @Test
+    public void added_events_should_be_merged_with_previous_ones() {
+        timeline.update(Arrays.asList(
+                new Event(3, "joe", "msg", "gravatar"),
+                new Event(1, "joe", "msg", "gravatar")));
+
+        timeline.add(Arrays.asList(new Event(2, "joe", "msg", "gravatar")));
+
+        assertThat(timeline.getEvents().size(), equalTo(3));
+        assertThat(timeline.getEvents().get(0).timestamp, equalTo(3L));
+        assertThat(timeline.getEvents().get(1).timestamp, equalTo(2L));
+        assertThat(timeline.getEvents().get(2).timestamp, equalTo(1L));
+    }
+
+    @Test
+    public void only_newest_events_should_be_kept_when_adding_events() {
+        List<Event> olderEvents = buildEvents(Timeline.MAX_SIZE);
+        timeline.update(olderEvents);
+        List<Event> events = timeline.getEvents();
+
+        timeline.add(Arrays.asList(new Event(1, "joe", "too old", "gravatar")));
+        assertThat(timeline.getEvents(), sameInstance(events));
+
+        Event newestEvent = new Event(System.currentTimeMillis() + 3600000, "joe", "newest", "gravatar");
+        timeline.add(Arrays.asList(newestEvent));
+        assertThat(timeline.getEvents().size(), equalTo(Timeline.MAX_SIZE));
+        assertThat(timeline.getEvents().get(0), sameInstance(newestEvent));
+        assertThat(timeline.getEvents().contains(olderEvents.get(0)), is(false));
+    }
+
+    @Test
+    public void event_added_twice_should_be_kept_once() {
+        Event event = new Event(1, "joe", "msg", "gravatar");
+
+        timeline.add(Arrays.asList(event));
+        timeline.add(Arrays.asList(event));
+
+        assertThat(timeline.getEvents().size(), equalTo(1));
+    }
+
+    @Test
+    public void size_should_be_configurable() {
+        timeline = new Timeline(3);
+
+        timeline.update(buildEvents(5));
+
+        assertThat(timeline.getEvents().size(), equalTo(3));
+    }
+
+    @Test
+    public void update_should_hold_the_events_published_after_the_known_version() throws Exception {
+        timeline.add(Arrays.asList(new Event(1, "joe", "msg", "gravatar")));
+        String knownCursor = timeline.getCursor();
+        Event newEvent = new Event(2, "joe", "msg", "gravatar");
+        timeline.add(Arrays.asList(newEvent));
+
+        TimelineUpdate update = timeline.awaitUpdate(knownCursor, 0, TimeUnit.SECONDS);
+
+        assertThat(update.version, equalTo(timeline.getVersion()));
+        assertThat(update.cursor, equalTo(timeline.getCursor()));
+        assertThat(update.events, equalTo(Arrays.asList(newEvent)));
+        assertThat(timeline.awaitUpdate(null, 0, TimeUnit.SECONDS).events.size(), equalTo(2));
+    }
+
+    @Test
+    public void update_should_be_empty_when_nothing_is_published_before_timeout() throws Exception {
+        timeline.add(buildEvents(2));
+
+        TimelineUpdate update = timeline.awaitUpdate(timeline.getCursor(), 10, TimeUnit.MILLISECONDS);
+
+        assertThat(update.version, equalTo(timeline.getVersion()));
+        assertTrue(update.events.isEmpty());
+    }
+
+    @Test
+    public void waiting_reader_should_be_woken_up_by_a_publication() throws Exception {
+        final List<Event> newEvents = buildEvents(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                timeline.add(newEvents);
+            }
+        }.start();
+
+        TimelineUpdate update = timeline.awaitUpdate(timeline.getCursor(), 10, TimeUnit.SECONDS);
+
+        assertThat(update.events, equalTo(newEvents));
+    }
+
+    @Test
+    public void unknown_version_should_be_answered_with_all_the_events() throws Exception {
+        timeline.add(buildEvents(3));
+
+        TimelineUpdate update = timeline.awaitUpdate(timeline.getEpoch() + ":" + (timeline.getVersion() + 10), 10, TimeUnit.SECONDS);
+
+        assertThat(update.events.size(), equalTo(3));
+    }
+
+    @Test
+    public void cursor_of_another_timeline_should_be_answered_at_once_with_all_the_events() throws Exception {
+        Timeline previousTimeline = new Timeline();
+        previousTimeline.add(buildEvents(1));
+        timeline.add(buildEvents(1));
+        String previousCursor = previousTimeline.getCursor();
+        assertThat(previousCursor, equalTo(previousTimeline.getEpoch() + ":" + timeline.getVersion()));
+
+        TimelineUpdate update = timeline.awaitUpdate(previousCursor, 10, TimeUnit.SECONDS);
+
+        assertThat(update.epoch, not(equalTo(previousTimeline.getEpoch())));
+        assertThat(update.events.size(), equalTo(1));
     }
 
     static List<Event> buildEvents(int nbFetchedEvents) {
         final List<Event> fetchedEvents = new ArrayList<Event>();
         for (int i = 0; i < nbFetchedEvents; i++) {
-            fetchedEvents.add(new Event(System.currentTimeMillis() + i, "joe", "committed something", "url gravatar"));
+            // distinct ids so that events built by successive calls are never equal
+            fetchedEvents.add(new Event("test:" + EVENT_IDS.incrementAndGet(), System.currentTimeMillis() + i, "joe", "committed something", "url gravatar", EventLevel.UNDIFINED));
         }
         return fetchedEvents;
     }
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+public class WorkspaceRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    PollScheduler pollScheduler = mock(PollScheduler.class);
+
+    long now = 0;
+
+    WorkspaceRegistry workspaceRegistry = new WorkspaceRegistry(pollScheduler, FetchStage.DIRECT, 60, TimeUnit.SECONDS, Timeline.MAX_SIZE) {
+        @Override
+        Workspace createWorkspace(Long id) {
+            return mock(Workspace.class);
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    };
+
+    @Test
+    public void workspace_should_be_created_and_scheduled_on_first_access() {
+
+        Workspace workspace = workspaceRegistry.get(1L);
+
+        assertThat(workspace, notNullValue());
+        verify(pollScheduler).schedule(workspace, 60000, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void workspace_should_be_kept_across_accesses() {
+
+        Workspace workspace = workspaceRegistry.get(1L);
+
+        assertThat(workspaceRegistry.get(1L), sameInstance(workspace));
+        assertThat(workspaceRegistry.get(2L), not(sameInstance(workspace)));
+        verify(pollScheduler, times(1)).schedule(workspace, 60000, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void evicted_workspace_should_not_be_polled_anymore() {
+        Workspace workspace = workspaceRegistry.get(1L);
+
+        workspaceRegistry.evict(1L);
+
+        verify(pollScheduler).cancel(workspace);
+        assertThat(workspaceRegistry.get(1L), not(sameInstance(workspace)));
+    }
+
+    @Test
+    public void only_idle_workspaces_should_be_evicted() {
+        Workspace idleWorkspace = workspaceRegistry.get(1L);
+        now = TimeUnit.MINUTES.toMillis(20);
+        Workspace activeWorkspace = workspaceRegistry.get(2L);
+        now = TimeUnit.MINUTES.toMillis(40);
+
+        int evicted = workspaceRegistry.evictIdle(30, TimeUnit.MINUTES);
+
+        assertThat(evicted, is(1));
+        verify(pollScheduler).cancel(idleWorkspace);
+        verify(pollScheduler, never()).cancel(activeWorkspace);
+        assertThat(workspaceRegistry.get(2L), sameInstance(activeWorkspace));
+    }
+
+    @Test
+    public void new_workspace_should_not_be_idle() {
+        now = TimeUnit.MINUTES.toMillis(40);
+        Workspace workspace = workspaceRegistry.get(1L);
+
+        int evicted = workspaceRegistry.evictIdle(30, TimeUnit.MINUTES);
+
+        assertThat(evicted, is(0));
+        assertThat(workspaceRegistry.get(1L), sameInstance(workspace));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void workspace_id_should_be_positive() {
+        workspaceRegistry.get(0L);
+    }
+
+    @Test
+    public void workspaces_should_not_be_created_beyond_the_maximum() {
+        workspaceRegistry.setMaxWorkspaces(2);
+        workspaceRegistry.get(1L);
+        workspaceRegistry.get(2L);
+
+        try {
+            workspaceRegistry.get(3L);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertThat(workspaceRegistry.get(2L), notNullValue());
+        assertThat(workspaceRegistry.getWorkspaces().size(), is(2));
+    }
+
+    @Test
+    public void workspace_should_be_restored_from_its_log() throws Exception {
+        File dataDir = folder.getRoot();
+        List<Event> loggedEvents = TimelineTest.buildEvents(3);
+        EventLog eventLog = EventLog.open(new File(dataDir, "workspace-1.log"));
+        eventLog.append(loggedEvents);
+        eventLog.close();
+        WorkspaceRegistry persistentRegistry = new WorkspaceRegistry(pollScheduler, FetchStage.DIRECT, 60, TimeUnit.SECONDS, Timeline.MAX_SIZE, dataDir);
+
+        Workspace workspace = persistentRegistry.get(1L);
+
+        assertTrue(workspace.getJournal().read(0, 10).events.containsAll(loggedEvents));
+        assertThat(workspace.getTimeline().getEvents().size(), is(3));
+        persistentRegistry.close();
+        verify(pollScheduler).cancel(workspace);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.xebia.devradar;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class WorkspaceResourceTest {
+
+    Timeline timeline = new Timeline();
+    Workspace workspace = new Workspace(Collections.<Pollable>emptyList(), timeline);
+    Semaphore updateWaiters = new Semaphore(1);
+    WorkspaceResource resource = new WorkspaceResource(workspace, updateWaiters);
+    Request request = mock(Request.class);
+
+    @Test
+    public void workspace_should_be_tagged_with_the_version_of_its_timeline() {
+        Response response = resource.getWorkspace(request, null);
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.getMetadata().getFirst("ETag"), equalTo((Object) new EntityTag(timeline.getEntityTag())));
+        assertThat(response.getMetadata().getFirst("Last-Modified"), notNullValue());
+    }
+
+    @Test
+    public void workspace_should_not_be_sent_when_the_screen_has_its_version() {
+        EntityTag entityTag = new EntityTag(timeline.getEntityTag());
+        when(request.evaluatePreconditions(any(Date.class), eq(entityTag))).thenReturn(Response.notModified());
+
+        Response response = resource.getWorkspace(request, null);
+
+        assertThat(response.getStatus(), is(304));
+        assertThat(response.getEntity(), nullValue());
+    }
+
+    @Test
+    public void rendered_json_should_be_written_as_is() throws Exception {
+        timeline.add(TimelineTest.buildEvents(2));
+
+        Response response = resource.getWorkspace(request, null);
+
+        assertThat(response.getEntity(), sameInstance((Object) workspace.getRendered().json));
+        JsonNode json = new ObjectMapper().readTree(new String(workspace.getRendered().json, "UTF-8"));
+        assertThat(json.get("name").getTextValue(), equalTo("Dev Radar"));
+        assertThat(json.get("timeline").get("version").getLongValue(), equalTo(timeline.getVersion()));
+        assertThat(json.get("timeline").get("events").size(), equalTo(2));
+    }
+
+    @Test
+    public void gzipped_json_should_be_written_when_accepted() throws Exception {
+        Response response = resource.getWorkspace(request, "gzip, deflate");
+
+        assertThat(response.getMetadata().getFirst("Content-Encoding"), equalTo((Object) "gzip"));
+        assertThat(response.getMetadata().getFirst("ETag"), equalTo((Object) new EntityTag(timeline.getEntityTag() + "-gzip")));
+        byte[] json = new byte[workspace.getRendered().json.length];
+        DataInputStream gzip = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream((byte[]) response.getEntity())));
+        gzip.readFully(json);
+        assertThat(gzip.read(), is(-1));
+        assertThat(new String(json, "UTF-8"), equalTo(new String(workspace.getRendered().json, "UTF-8")));
+    }
+
+    @Test
+    public void workspace_should_be_rendered_once_per_publication() {
+        RenderedWorkspace rendered = workspace.getRendered();
+        assertThat(workspace.getRendered(), sameInstance(rendered));
+
+        timeline.add(TimelineTest.buildEvents(1));
+
+        assertThat(workspace.getRendered(), not(sameInstance(rendered)));
+    }
+
+    @Test
+    public void entity_tag_should_change_when_the_timeline_is_published() {
+        String entityTag = timeline.getEntityTag();
+
+        timeline.add(TimelineTest.buildEvents(1));
+
+        assertThat(timeline.getEntityTag(), not(equalTo(entityTag)));
+    }
+
+    @Test
+    public void update_should_be_refused_when_too_many_are_held() {
+        updateWaiters.acquireUninterruptibly();
+        try {
+            resource.getUpdates(null);
+            fail();
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus(), is(503));
+            assertThat(e.getResponse().getMetadata().getFirst("Retry-After"), equalTo((Object) WorkspaceResource.UPDATE_RETRY_AFTER_SECONDS));
+        }
+        updateWaiters.release();
+
+        assertThat(resource.getUpdates(null).epoch, equalTo(timeline.getEpoch()));
+        assertThat(updateWaiters.availablePermits(), is(1));
+    }
+}
@@ -18,12 +18,20 @@
  */
 package com.xebia.devradar;
 
+import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -33,14 +41,22 @@ public class WorkspaceTest {
     HudsonFetcher hudsonFetcher = mock(HudsonFetcher.class, RETURNS_SMART_NULLS);
     GitHubFetcher gitHubFetcher = mock(GitHubFetcher.class, RETURNS_SMART_NULLS);
     Timeline timeline = mock(Timeline.class, RETURNS_SMART_NULLS);
-    Workspace workspace = new Workspace(Arrays.asList(hudsonFetcher, gitHubFetcher), timeline);
+    Workspace workspace = new Workspace(Arrays.<Pollable>asList(hudsonFetcher, gitHubFetcher), timeline);
+
+    @Captor
+    ArgumentCaptor<Collection<Event>> newEvents;
+
+    @Before
+    public void initCaptors() {
+        MockitoAnnotations.initMocks(this);
+    }
 
     @Test
     public void events_should_contain_fetched_events_and_timeline_is_updated_after_polling() {
 
         List<Event> previousEvents = TimelineTest.buildEvents(5);
         // initialise events of the workspace
-        workspace.events.addAll(previousEvents);
+        appendToJournal(previousEvents);
 
         List<Event> fetchedEvents = TimelineTest.buildEvents(3);
         when(gitHubFetcher.fetch()).thenReturn(new HashSet<Event>(fetchedEvents));
@@ -48,10 +64,12 @@ public class WorkspaceTest {
         workspace.poll();
 
         // assert all fetched events are stored
-        assertTrue(workspace.events.containsAll(fetchedEvents));
+        assertTrue(journalContainsAll(fetchedEvents));
         // assert previously stored events are not lost
-        assertTrue(workspace.events.containsAll(previousEvents));
-        verify(timeline).update(workspace.events);
+        assertTrue(journalContainsAll(previousEvents));
+        // assert only new events are added to the timeline
+        assertThat(newEventsAddedToTimeline().size(), equalTo(3));
+        assertTrue(newEventsAddedToTimeline().containsAll(fetchedEvents));
     }
 
     @Test
@@ -59,7 +77,7 @@ public class WorkspaceTest {
 
         List<Event> previousEvents = TimelineTest.buildEvents(5);
         // initialise events of the workspace
-        workspace.events.addAll(previousEvents);
+        appendToJournal(previousEvents);
 
         List<Event> gitHubFetchedEvents = TimelineTest.buildEvents(3);
         when(gitHubFetcher.fetch()).thenReturn(new HashSet<Event>(gitHubFetchedEvents));
@@ -69,13 +87,97 @@ public class WorkspaceTest {
         workspace.poll();
 
         // assert all fetched events are stored
-        assertTrue(workspace.events.containsAll(gitHubFetchedEvents));
-        assertTrue(workspace.events.containsAll(hudsonFetchedEvents));
+        assertTrue(journalContainsAll(gitHubFetchedEvents));
+        assertTrue(journalContainsAll(hudsonFetchedEvents));
         // assert previously stored events are not lost
-        assertTrue(workspace.events.containsAll(previousEvents));
+        assertTrue(journalContainsAll(previousEvents));
+        verify(gitHubFetcher, times(1)).fetch();
+        verify(hudsonFetcher, times(1)).fetch();
+        assertThat(newEventsAddedToTimeline().size(), equalTo(5));
+
+    }
+
+    @Test
+    public void getting_timeline_should_not_poll_fetchers() {
+
+        workspace.getTimeline();
+
+        verify(gitHubFetcher, never()).fetch();
+        verify(hudsonFetcher, never()).fetch();
+        verify(timeline, never()).add(anyCollectionOf(Event.class));
+    }
+
+    @Test
+    public void polling_should_record_last_refresh_of_each_source() {
+
+        when(gitHubFetcher.getUrl()).thenReturn("http://github.com/api/v2/json/commits/list/xebia-france/dev-radar/master");
+        when(hudsonFetcher.getUrl()).thenReturn("http://fluxx.fr.cr:8080/hudson/job/dev-radar");
+        long beforePoll = System.currentTimeMillis();
+
+        workspace.poll();
+
+        assertThat(workspace.getLastRefreshes().size(), equalTo(2));
+        assertTrue(workspace.getLastRefreshes().get("http://github.com/api/v2/json/commits/list/xebia-france/dev-radar/master") >= beforePoll);
+        assertTrue(workspace.getLastRefreshes().get("http://fluxx.fr.cr:8080/hudson/job/dev-radar") >= beforePoll);
+    }
+
+    @Test
+    public void events_fetched_again_should_not_be_stored_twice() {
+
+        List<Event> fetchedEvents = TimelineTest.buildEvents(3);
+        when(gitHubFetcher.fetch()).thenReturn(new HashSet<Event>(fetchedEvents));
+
+        workspace.poll();
+        workspace.poll();
+
+        assertThat(workspace.getJournal().getLastSequence(), equalTo(3L));
+        assertTrue(newEventsAddedToTimeline().isEmpty());
+    }
+
+    @Test
+    public void sources_should_resume_after_the_restored_events() throws Exception {
+        ResumablePollable resumableFetcher = mock(ResumablePollable.class);
+        Workspace restoredWorkspace = new Workspace(Arrays.<Pollable>asList(resumableFetcher, gitHubFetcher), timeline);
+        List<Event> loggedEvents = TimelineTest.buildEvents(3);
+        EventLog eventLog = mock(EventLog.class);
+        when(eventLog.replay()).thenReturn(loggedEvents);
+
+        restoredWorkspace.restore(eventLog);
+
+        verify(resumableFetcher).resume(loggedEvents);
+        assertThat(restoredWorkspace.getJournal().getLastSequence(), equalTo(3L));
+    }
+
+    @Test
+    public void sources_should_not_be_fetched_again_before_their_interval() {
+
+        workspace.adaptPollIntervals(1, 60, TimeUnit.HOURS);
+        when(gitHubFetcher.fetch()).thenReturn(new HashSet<Event>(TimelineTest.buildEvents(3)));
+
+        workspace.poll();
+        workspace.poll();
+
         verify(gitHubFetcher, times(1)).fetch();
         verify(hudsonFetcher, times(1)).fetch();
-        verify(timeline).update(workspace.events);
+    }
+
+    private void appendToJournal(List<Event> events) {
+        for (Event event : events) {
+            workspace.getJournal().append(event);
+        }
+    }
+
+    private boolean journalContainsAll(List<Event> events) {
+        for (Event event : events) {
+            if (!workspace.getJournal().contains(event)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
+    private Collection<Event> newEventsAddedToTimeline() {
+        verify(timeline, atLeastOnce()).add(newEvents.capture());
+        return newEvents.getValue();
     }
 }